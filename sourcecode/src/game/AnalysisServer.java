@@ -0,0 +1,329 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+Serves engine analysis over TCP on the local machine, run with:
+    java game.AnalysisServer [port] [engines] [queue] [table bits]
+Each line a client sends is one request as a JSON object, and each request gets one line back:
+    {"id": 7, "fen": "B:W21,22,...:B1,2,...", "depth": 10, "nodes": 0, "movetime": 0, "timeout": 5000}
+    {"id":7,"bestmove":"11-15","score":12,"depth":10,"nodes":48213,"pv":["11-15","22-18"],"time":35}
+Only fen is required. depth and nodes limit the search as in Engine, movetime searches for a fixed time instead,
+and timeout is the most time in milliseconds the request may take from when it arrives, queueing included.
+"size": 10 or 12 analyses a position of a larger variant (see Variant), numbered as VariantBoard.fromFen reads it
+A search cut short by its timeout answers with its last completed iteration and "timeout":true, a request that
+times out before it starts or before one iteration finishes, or that cannot be read, answers with {"id":...,"error":"..."}
+An answer from the opening book has depth 0, and a position with no moves answers with a null bestmove
+A client can send many requests without waiting, the answers come back as the searches finish and carry the id
+Searches run on a fixed pool of engines that share one transposition table, so work done for one client
+helps the others. When every engine is busy and the queue is full new requests are turned away with an error,
+rather than letting a burst of requests pile up without limit
+ */
+public class AnalysisServer {
+
+    private static final int DEFAULT_PORT = 4280;
+    private static final int DEFAULT_QUEUE = 64;
+    private static final int DEFAULT_TABLE_BITS = 22;
+    private static final int DEFAULT_DEPTH = 8;
+    private static final long DEFAULT_TIMEOUT = 10000;
+    private static final long MAX_TIMEOUT = 600000;
+
+    private final ServerSocket serverSocket;
+    private final ArrayList<Engine> engines = new ArrayList<>();
+    private final ArrayBlockingQueue<Engine> idleEngines;
+    private final ThreadPoolExecutor searchPool;
+    private final ExecutorService connectionPool;
+    private final ScheduledExecutorService timer;
+    private volatile boolean closed;
+
+    /*
+    Creates a server listening on the loopback address with the given number of engines
+    and room for queueSize requests waiting for an engine
+     */
+    public AnalysisServer(int port, int engineCount, int queueSize, int tableBits) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        TranspositionTable table = new TranspositionTable(tableBits);
+        idleEngines = new ArrayBlockingQueue<>(engineCount);
+        for (int i = 0; i < engineCount; i++) {
+            engines.add(new Engine(DEFAULT_DEPTH, 0, table));
+        }
+        idleEngines.addAll(engines);
+        searchPool = new ThreadPoolExecutor(engineCount, engineCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), daemon("analysis-search"));
+        connectionPool = Executors.newCachedThreadPool(daemon("analysis-connection"));
+        timer = Executors.newSingleThreadScheduledExecutor(daemon("analysis-timer"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int engines = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queue = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUEUE;
+        int tableBits = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_TABLE_BITS;
+        AnalysisServer server = new AnalysisServer(port, engines, queue, tableBits);
+        Log.log(Log.INFO, "Analysis server listening on port " + server.getPort() + " with " + engines + " engines");
+        server.serve();
+    }
+
+    //Returns the port the server is listening on, useful when it was created with port 0
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    //Accepts clients until close is called, each client is read on its own thread
+    public void serve() throws IOException {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                throw e;
+            }
+            connectionPool.execute(() -> handleClient(socket));
+        }
+    }
+
+    //Stops accepting clients and stops every search, waiting requests are dropped
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        searchPool.shutdownNow();
+        for (Engine engine : engines) {
+            engine.stop();
+        }
+        connectionPool.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    //One client's answers, with a count of its requests still to be answered
+    private static class Connection {
+        final Writer out;
+        private int pending;
+
+        Connection(Writer out) {
+            this.out = out;
+        }
+
+        synchronized void started() {
+            pending++;
+        }
+
+        synchronized void finished() {
+            pending--;
+            notifyAll();
+        }
+
+        //Waits for every request to be answered, so a client that stops sending still gets its answers
+        synchronized void awaitAnswers() throws InterruptedException {
+            while (pending > 0) {
+                wait();
+            }
+        }
+
+        //Answers are written whole under the connection's lock, so answers from different searches never interleave
+        synchronized void reply(Map<String, Object> response) {
+            try {
+                out.write(Json.write(response));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                if (Log.isEnabled(Log.DEBUG)) {
+                    Log.log(Log.DEBUG, "Could not answer analysis client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleClient(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))) {
+            Connection connection = new Connection(out);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    submit(line, connection, System.nanoTime());
+                }
+            }
+            connection.awaitAnswers();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (Log.isEnabled(Log.DEBUG)) {
+                Log.log(Log.DEBUG, "Analysis client disconnected: " + e.getMessage());
+            }
+        }
+    }
+
+    //Reads a request and queues it for an engine, answering at once if it cannot be read or the queue is full
+    private void submit(String line, Connection connection, long received) {
+        Object id = null;
+        try {
+            Object parsed = Json.parse(line);
+            if (!(parsed instanceof Map)) {
+                throw new IllegalArgumentException("A request must be a JSON object");
+            }
+            Map<?, ?> request = (Map<?, ?>) parsed;
+            id = request.get("id");
+            Object fen = request.get("fen");
+            if (!(fen instanceof String)) {
+                throw new IllegalArgumentException("A request needs a fen");
+            }
+            final int size = (int) number(request, "size", 8);
+            final SearchBoard board = size == 8 ? Board.fromFen((String) fen) : VariantBoard.fromFen(Variant.forSize(size), (String) fen);
+            final int depth = (int) Math.min(number(request, "depth", DEFAULT_DEPTH), Search.MAX_PLY - 1);
+            final long nodes = number(request, "nodes", 0);
+            final long moveTime = number(request, "movetime", 0);
+            final long timeout = Math.min(number(request, "timeout", DEFAULT_TIMEOUT), MAX_TIMEOUT);
+            if (depth < 1 || nodes < 0 || moveTime < 0 || timeout <= 0) {
+                throw new IllegalArgumentException("Limits must be positive");
+            }
+            final Object requestId = id;
+            connection.started();
+            try {
+                searchPool.execute(() -> {
+                    try {
+                        connection.reply(analyse(requestId, board, depth, nodes, moveTime, received + timeout * 1000000, received));
+                    } finally {
+                        connection.finished();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                connection.finished();
+                throw e;
+            }
+        } catch (IllegalArgumentException e) {
+            connection.reply(error(id, e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            connection.reply(error(id, "Server busy"));
+        }
+    }
+
+    //Runs on a search thread: borrows an engine, searches until the limits or the deadline, and returns the answer
+    private Map<String, Object> analyse(Object id, SearchBoard board, int depth, long nodes, long moveTime, long deadline, long received) {
+        if (System.nanoTime() - deadline >= 0) {
+            return error(id, "Timed out waiting for an engine");
+        }
+        Engine engine = idleEngines.poll();
+        if (engine == null) {
+            return error(id, "No engine free"); //Cannot happen while there are as many threads as engines
+        }
+        ScheduledFuture<?> timeout = null;
+        try {
+            engine.setMaxDepth(depth);
+            engine.setNodeLimit(nodes);
+            engine.setMoveTime(moveTime);
+            engine.setClock(0, 0);
+            long generation = engine.getGeneration();
+            final Engine searching = engine;
+            //Whoever sets finished first decides: the stop task when the deadline passes, or this thread when the search returns
+            final AtomicBoolean finished = new AtomicBoolean();
+            timeout = timer.schedule(() -> {
+                if (finished.compareAndSet(false, true)) {
+                    searching.stop();
+                }
+            }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            String bestMove = null;
+            List<String> pv = new ArrayList<>();
+            SearchResult result;
+            if (board instanceof VariantBoard) {
+                VariantBoard variantBoard = (VariantBoard) board;
+                result = engine.search(variantBoard, generation);
+                for (int move : result.getPackedVariation()) {
+                    pv.add(variantBoard.moveText(move));
+                }
+                bestMove = pv.isEmpty() ? null : pv.get(0);
+            } else {
+                result = engine.search((Board) board, generation);
+                for (Move move : result.getPrincipalVariation()) {
+                    pv.add(PdnWriter.moveText(move));
+                }
+                bestMove = result.getBestMove() == null ? null : PdnWriter.moveText(result.getBestMove());
+            }
+            boolean timedOut = !finished.compareAndSet(false, true);
+            if (result.isUnfinished()) {
+                return error(id, timedOut ? "Timed out before the first iteration finished" : "No iteration finished within the limits");
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("id", id);
+            response.put("bestmove", bestMove);
+            response.put("score", result.getScore());
+            response.put("depth", result.getDepth());
+            response.put("nodes", result.getNodes());
+            response.put("pv", pv);
+            response.put("time", (System.nanoTime() - received) / 1000000);
+            if (timedOut) {
+                response.put("timeout", true);
+            }
+            return response;
+        } finally {
+            if (timeout != null && !timeout.cancel(false)) {
+                awaitStop(timeout); //A stop that fires late must not cut short the engine's next request
+            }
+            idleEngines.add(engine);
+        }
+    }
+
+    private static void awaitStop(ScheduledFuture<?> stop) {
+        try {
+            stop.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Stopping a search failed", e.getCause());
+        }
+    }
+
+    private static Map<String, Object> error(Object id, String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", id);
+        response.put("error", message);
+        return response;
+    }
+
+    private static long number(Map<?, ?> request, String name, long defaultValue) {
+        Object value = request.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+        return ((Number) value).longValue();
+    }
+
+    //Server threads are daemons so that an embedded server never keeps the application open
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,98 @@
+package game;
+
+/*
+Log sink that hands messages to a background thread, which passes them on to another sink
+Messages wait in a fixed size ring buffer, so logging never blocks on console or file output:
+if the writer falls behind and the buffer fills up, new messages are dropped and counted instead
+ */
+public class AsyncLogSink implements LogSink {
+
+    private final LogSink target;
+    private final String[] messages;
+    private final int[] levels;
+    private int head; //Next message to write
+    private int size;
+    private long dropped; //Since the writer last reported them
+    private long totalDropped;
+    private boolean closed;
+    private final Thread writer;
+
+    public AsyncLogSink(LogSink target, int capacity) {
+        this.target = target;
+        this.messages = new String[capacity];
+        this.levels = new int[capacity];
+        writer = new Thread(this::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(int level, String message) {
+        synchronized (this) {
+            if (closed || size == messages.length) {
+                dropped++;
+                totalDropped++;
+                return;
+            }
+            int tail = (head + size) % messages.length;
+            messages[tail] = message;
+            levels[tail] = level;
+            size++;
+            if (size == 1) {
+                notifyAll();
+            }
+        }
+    }
+
+    //Returns how many messages have been dropped in all because the buffer was full or the sink was closed
+    public synchronized long getDropped() {
+        return totalDropped;
+    }
+
+    /*
+    Stops taking new messages and waits for the ones already buffered to be written
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Writer thread loop, writes messages in order until the sink is closed and the buffer is empty
+    private void drain() {
+        while (true) {
+            String message;
+            int level;
+            long missed;
+            synchronized (this) {
+                while (size == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (size == 0) {
+                    return;
+                }
+                message = messages[head];
+                level = levels[head];
+                messages[head] = null;
+                head = (head + 1) % messages.length;
+                size--;
+                missed = dropped;
+                dropped = 0;
+            }
+            if (missed > 0) {
+                target.write(Log.ERROR, missed + " log messages dropped");
+            }
+            target.write(level, message);
+        }
+    }
+}
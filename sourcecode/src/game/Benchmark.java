@@ -0,0 +1,237 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/*
+Command line benchmarks for the engine, run with: java game.Benchmark [mode] [depth] [network file]
+movegen - getLegalMoves and generateMoves on a fixed set of positions
+domove  - doMove followed by undoMove for every legal move of those positions
+score   - getMoveScore for every legal move of those positions
+search  - the search behind calculateBestMove to a fixed depth on those positions
+ordering - searches every 50th position once to a fixed depth and reports the nodes and the first move cutoff rate
+smp     - searches the start position to a fixed depth with 1, 2, 4 and 8 threads and reports the speedup over 1 thread
+mcts    - MCTS of the start position with 1, 2, 4 and 8 threads, the second argument being the playouts (default 200000),
+          reporting playouts/s and the speedup over 1 thread to set against smp
+nnue    - the search benchmark with the handcrafted evaluation and then with a network, from the file or random if none is given
+all     - every benchmark except ordering, smp, mcts and nnue (the default)
+Each benchmark is run untimed for a couple of seconds so the JIT has compiled it, then timed for at least five seconds
+ */
+public class Benchmark {
+
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+    private static final int POSITION_COUNT = 1000;
+    private static final long WARMUP_NANOS = 2000000000L;
+    private static final long MEASURED_NANOS = 5000000000L;
+
+    //One round of a benchmark, returns how many operations it carried out
+    private interface Round {
+        long run();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "all";
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        ArrayList<Board> positions = samplePositions(POSITION_COUNT, 42);
+        boolean all = mode.equals("all");
+        if (all || mode.equals("movegen")) {
+            measure("getLegalMoves", () -> moveGeneration(positions), "moves");
+            measure("generateMoves", () -> packedMoveGeneration(positions), "moves");
+        }
+        if (all || mode.equals("domove")) {
+            measure("doMove/undoMove", () -> makeUnmake(positions), "moves");
+        }
+        if (all || mode.equals("score")) {
+            measure("getMoveScore", () -> moveScores(positions), "moves");
+        }
+        if (all || mode.equals("search")) {
+            final Engine engine = new Engine(depth > 0 ? depth : 6, 0);
+            measure("search (depth " + engine.getMaxDepth() + ")", () -> searches(engine, positions), "nodes");
+        }
+        if (mode.equals("ordering")) {
+            ordering(new Engine(depth > 0 ? depth : 8, 0), positions);
+        } else if (mode.equals("smp")) {
+            parallelSpeedup(depth > 0 ? depth : 12, new int[]{1, 2, 4, 8});
+        } else if (mode.equals("mcts")) {
+            mctsSpeedup(depth > 0 ? depth : 200000, new int[]{1, 2, 4, 8});
+        } else if (mode.equals("nnue")) {
+            NnueNetwork network = args.length > 2 ? NnueNetwork.load(new File(args[2])) : NnueNetwork.random(32, 1);
+            evaluators(depth > 0 ? depth : 6, network, positions);
+        } else if (!all && !mode.equals("movegen") && !mode.equals("domove") && !mode.equals("score") && !mode.equals("search")) {
+            System.out.println("Unknown benchmark: " + mode);
+        }
+    }
+
+    /*
+    Plays random games from the start position with a fixed seed and keeps positions from along the way,
+    so every run measures the same openings, middlegames and endgames
+     */
+    static ArrayList<Board> samplePositions(int count, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Board> positions = new ArrayList<>();
+        while (positions.size() < count) {
+            Board board = new Board(random.nextInt(2) + 1);
+            for (int ply = 0; ply < 120 && positions.size() < count; ply++) {
+                ArrayList<Move> moves = board.getLegalMoves(board.getCurrentPlayer());
+                if (moves.isEmpty() || board.getPieceCount(WHITE) == 0 || board.getPieceCount(BLACK) == 0) {
+                    break;
+                }
+                board.doMove(moves.get(random.nextInt(moves.size())));
+                if (ply % 4 == 3) {
+                    positions.add(Board.fromFen(board.toFen()));
+                }
+            }
+        }
+        return positions;
+    }
+
+    private static void measure(String name, Round round, String unit) {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < WARMUP_NANOS) {
+            round.run();
+        }
+        long operations = 0;
+        start = System.nanoTime();
+        while (System.nanoTime() - start < MEASURED_NANOS) {
+            operations += round.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-22s %12.0f %s/s (%d %s in %.3fs)%n", name, operations / seconds, unit, operations, unit, seconds);
+    }
+
+    private static long moveGeneration(ArrayList<Board> positions) {
+        long count = 0;
+        for (Board board : positions) {
+            count += board.getLegalMoves(board.getCurrentPlayer()).size();
+        }
+        return count;
+    }
+
+    private static long packedMoveGeneration(ArrayList<Board> positions) {
+        int[] buffer = new int[Board.MAX_MOVES];
+        long count = 0;
+        for (Board board : positions) {
+            count += board.generateMoves(board.getCurrentPlayer(), buffer);
+        }
+        return count;
+    }
+
+    private static long makeUnmake(ArrayList<Board> positions) {
+        int[] buffer = new int[Board.MAX_MOVES];
+        long count = 0;
+        for (Board board : positions) {
+            int moves = board.generateMoves(board.getCurrentPlayer(), buffer);
+            for (int i = 0; i < moves; i++) {
+                board.doMove(buffer[i]);
+                board.undoMove();
+            }
+            count += moves;
+        }
+        return count;
+    }
+
+    private static long moveScores(ArrayList<Board> positions) {
+        long count = 0;
+        long total = 0;
+        for (Board board : positions) {
+            for (Move move : board.getLegalMoves(board.getCurrentPlayer())) {
+                total += board.getMoveScore(move);
+                count++;
+            }
+        }
+        return total == Long.MIN_VALUE ? 0 : count; //Uses the scores so the calls cannot be optimised away
+    }
+
+    private static long searches(Engine engine, ArrayList<Board> positions) {
+        long nodes = 0;
+        for (int i = 0; i < positions.size(); i += 50) {
+            engine.getTranspositionTable().clear();
+            nodes += engine.search(positions.get(i)).getNodes();
+        }
+        return nodes;
+    }
+
+    //Reports how well the moves are ordered, the fewer nodes and the higher the rate the better
+    private static void ordering(Engine engine, ArrayList<Board> positions) {
+        long nodes = 0;
+        long cutoffs = 0;
+        long firstMoveCutoffs = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < positions.size(); i += 50) {
+            engine.getTranspositionTable().clear();
+            SearchResult result = engine.search(positions.get(i));
+            nodes += result.getNodes();
+            cutoffs += result.getCutoffs();
+            firstMoveCutoffs += result.getFirstMoveCutoffs();
+        }
+        System.out.printf("Depth: %d Nodes: %d Cutoffs: %d First move cutoffs: %.1f%% Time: %.2fs%n", engine.getMaxDepth(), nodes, cutoffs,
+                cutoffs == 0 ? 0 : 100.0 * firstMoveCutoffs / cutoffs, (System.nanoTime() - start) / 1e9);
+    }
+
+    //The same as parallelSpeedup for MctsEngine, each run with a fixed number of playouts and a new tree
+    private static void mctsSpeedup(int playouts, int[] threadCounts) {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        new MctsEngine(playouts / 4).search(new Board(WHITE)); //Warm up the JIT before timing anything
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            long done = 0;
+            long start = System.nanoTime();
+            for (int player = WHITE; player <= BLACK; player++) {
+                MctsEngine engine = new MctsEngine(playouts);
+                engine.setThreads(threads);
+                SearchResult result = engine.search(new Board(player));
+                done += result.getNodes();
+                engine.setThreads(1); //Shuts down the helper threads
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (threads == threadCounts[0]) {
+                baseline = seconds;
+            }
+            System.out.printf("Threads: %d Time: %.2fs Playouts: %d Playouts/s: %.0f Speedup: %.2fx%n",
+                    threads, seconds, done, done / seconds, baseline / seconds);
+        }
+    }
+
+    //Compares search speed with each evaluation, the searches differ too so nodes/s is the fair measure
+    private static void evaluators(int depth, NnueNetwork network, ArrayList<Board> positions) {
+        NnueNetwork previous = Board.getNetwork();
+        final Engine engine = new Engine(depth, 0);
+        try {
+            Board.setNetwork(null);
+            measure("handcrafted", () -> searches(engine, positions), "nodes");
+            Board.setNetwork(network);
+            measure("network (" + network.getHidden() + ")", () -> searches(engine, positions), "nodes");
+        } finally {
+            Board.setNetwork(previous);
+        }
+    }
+
+    /*
+    Times a fixed depth search of the start position for each thread count, with both players to move
+    Every run gets a fresh transposition table so earlier runs cannot help later ones
+     */
+    private static void parallelSpeedup(int depth, int[] threadCounts) {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        new Engine(depth - 2, 0).search(new Board(WHITE)); //Warm up the JIT before timing anything
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (int player = WHITE; player <= BLACK; player++) {
+                Engine engine = new Engine(depth, 0);
+                engine.setThreads(threads);
+                nodes += engine.search(new Board(player)).getNodes();
+                engine.setThreads(1); //Shuts down the helper threads
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (threads == threadCounts[0]) {
+                baseline = seconds;
+            }
+            System.out.printf("Threads: %d Time: %.2fs Nodes: %d Nodes/s: %.0f Speedup: %.2fx%n",
+                    threads, seconds, nodes, nodes / seconds, baseline / seconds);
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package game;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
 
-public class Board {
+public class Board implements SearchBoard {
 
-    private int[][] board = new int[8][8];
+    /*
+    The position is stored as three 32 bit masks, one bit per playable (dark) square.
+    Square index = row * 4 + column / 2, so bit 0 is [0, 0], bit 3 is [0, 6], bit 4 is [1, 1] and bit 31 is [7, 7].
+    whiteBits and blackBits hold every piece of that colour, kingBits marks which of those pieces are kings
+     */
+    private int whiteBits;
+    private int blackBits;
+    private int kingBits;
+    private int[][] boardView;
     private ArrayList<Move> moveSequence;
     private int currentPlayer;
     private int totalTurns;
@@ -13,12 +23,67 @@ public class Board {
     private int blackPieces;
     private int whiteKingPieces;
     private int blackKingPieces;
+    private int materialScore; //evaluate for white, kept up to date by playMove and undoRecord like the piece counters
+    private EvalWeights scoreWeights; //The weights materialScore was worked out with
+    private NnueNetwork.Accumulator accumulator; //Only kept while a network is set, see setNetwork
+    private long pieceHash;
+    private int[] undoStack = new int[64];
+    private final int[] captureMasks = new int[4];
+    private final int[] moveMasks = new int[4];
+    private static volatile Engine engine; //Set by setEngine, otherwise the default engine is used (see getEngine)
+    private static EvalWeights weights = EvalWeights.fromSystemProperty();
+    private static NnueNetwork network = NnueNetwork.fromSystemProperty();
+    private int undoSize;
     private static final int EMPTY = 0;
     private static final int WHITE = 1;
     private static final int BLACK = 2;
     private static final int WHITE_KING = 3;
     private static final int BLACK_KING = 4;
 
+    //Masks used by the shift functions to stop pieces wrapping around the board edges
+    private static final int EVEN_ROWS = 0x0F0F0F0F;
+    private static final int ODD_ROWS = 0xF0F0F0F0;
+    private static final int EVEN_ROWS_NOT_LEFT = 0x0E0E0E0E;
+    private static final int ODD_ROWS_NOT_RIGHT = 0x70707070;
+    private static final int WHITE_HALF = 0x0000FFFF; //Rows 0 - 3, the opponents side for white pieces
+    private static final int BLACK_HALF = 0xFFFF0000; //Rows 4 - 7, the opponents side for black pieces
+    private static final int WHITE_CROWN = 0x0000000F;
+    private static final int BLACK_CROWN = 0xF0000000;
+    private static final int WHITE_START = 0xFFF00000;
+    private static final int BLACK_START = 0x00000FFF;
+
+    //Directions in the order the moves have always been listed in: [+1, +1], [-1, +1], [+1, -1], [-1, -1]
+    private static final int DOWN_RIGHT = 0;
+    private static final int UP_RIGHT = 1;
+    private static final int DOWN_LEFT = 2;
+    private static final int UP_LEFT = 3;
+    private static final int UNDO_PROMOTED = 1 << 18;
+    private static final int UNDO_CHAINED = 1 << 21; //Marks a later hop of a compound move, undone along with the hop before it
+    private static final int[] OPPOSITE = {UP_LEFT, DOWN_LEFT, UP_RIGHT, DOWN_RIGHT};
+
+    //Lookup tables between square indexes and board coordinates
+    private static final int[] SQUARE_ROW = new int[32];
+    private static final int[] SQUARE_COLUMN = new int[32];
+    //The square one step and two steps away in each direction, only read for moves the shifts have already found
+    private static final int[][] STEP_TARGET = new int[4][32];
+    private static final int[][] JUMP_TARGET = new int[4][32];
+
+    //Size needed for a move buffer, each piece has at most one move or capture in each of the 4 directions
+    public static final int MAX_MOVES = 4 * 32;
+
+    static {
+        for (int sq = 0; sq < 32; sq++) {
+            SQUARE_ROW[sq] = sq >> 2;
+            SQUARE_COLUMN[sq] = ((sq & 3) << 1) + ((sq >> 2) & 1);
+        }
+        for (int d = 0; d < 4; d++) {
+            for (int sq = 0; sq < 32; sq++) {
+                STEP_TARGET[d][sq] = square(SQUARE_ROW[sq] + rowStep(d), SQUARE_COLUMN[sq] + columnStep(d)) & 31;
+                JUMP_TARGET[d][sq] = square(SQUARE_ROW[sq] + 2 * rowStep(d), SQUARE_COLUMN[sq] + 2 * columnStep(d)) & 31;
+            }
+        }
+    }
+
     //Initialise board
     public Board() {
         moveSequence = new ArrayList<>();
@@ -31,17 +96,64 @@ public class Board {
         calculateBoardConditions();
     }
 
+    //Initialise board with a chosen starting player instead of a random one
+    public Board(int startingPlayer) {
+        this();
+        this.currentPlayer = startingPlayer;
+    }
+
     //Constructor used to when creating clones for evaluation function
-    private Board(int[][] board, ArrayList<Move> moveSequence, int currentPlayer, int totalTurns) {
+    private Board(int whiteBits, int blackBits, int kingBits, ArrayList<Move> moveSequence, int currentPlayer, int totalTurns) {
         this.moveSequence = moveSequence;
-        this.board = board;
+        this.whiteBits = whiteBits;
+        this.blackBits = blackBits;
+        this.kingBits = kingBits;
+        this.pieceHash = Zobrist.hash(whiteBits, blackBits, kingBits);
         this.currentPlayer = currentPlayer;
         this.totalTurns = totalTurns;
-        whitePieces = 0;
-        blackPieces = 0;
-        whiteKingPieces = 0;
-        blackKingPieces = 0;
-        calculateBoardConditions();
+        countPieces();
+    }
+
+    /*
+    Replaces the position with the given bitboards and player to move, used by the tablebase to step through positions
+    The move sequence and undo history are cleared
+     */
+    void setPosition(int whiteBits, int blackBits, int kingBits, int currentPlayer) {
+        this.whiteBits = whiteBits;
+        this.blackBits = blackBits;
+        this.kingBits = kingBits;
+        this.currentPlayer = currentPlayer;
+        this.pieceHash = Zobrist.hash(whiteBits, blackBits, kingBits);
+        this.moveSequence.clear();
+        this.undoSize = 0;
+        this.boardView = null;
+        countPieces();
+    }
+
+    /*
+    Same as setPosition, and also sets the turn count, used by GameHistory to go back to a checkpoint
+    The caller refills the move sequence with the moves that led to the position
+     */
+    void restorePosition(int whiteBits, int blackBits, int kingBits, int currentPlayer, int totalTurns) {
+        setPosition(whiteBits, blackBits, kingBits, currentPlayer);
+        this.totalTurns = totalTurns;
+    }
+
+    //Returns how many moves can be taken back with undoMove or unmakeMove
+    int getUndoSize() {
+        return undoSize;
+    }
+
+    int getWhiteBits() {
+        return whiteBits;
+    }
+
+    int getBlackBits() {
+        return blackBits;
+    }
+
+    int getKingBits() {
+        return kingBits;
     }
 
     //Returns the current player
@@ -49,18 +161,31 @@ public class Board {
         return currentPlayer;
     }
 
-    //Returns the current state of the board array
+    /*
+    Returns the current state of the board as an 8x8 array
+    The array is only a view of the bitboards, it is rebuilt lazily after the position changes
+     */
     public int[][] getBoard() {
-        return board;
+        if (boardView == null) {
+            int[][] view = new int[8][8];
+            for (int sq = 0; sq < 32; sq++) {
+                view[SQUARE_ROW[sq]][SQUARE_COLUMN[sq]] = pieceAt(whiteBits, blackBits, kingBits, sq);
+            }
+            boardView = view;
+        }
+        return boardView;
     }
 
     //Handles the game logic for when making a move
     public int makeMove(Move move) {
 
         moveSequence.add(move);
-        doMove(board, move);
+        playHops(move);
+        currentPlayer = move.getPlayer(); //Usually unchanged, but a game record can end a turn after a capture (see doMove)
         int state = calculateBoardConditions();
-        System.out.println((move.getPlayer() == 1 ? "White" : "Black") + " has played: " + move.toString());
+        if (Log.isEnabled(Log.DEBUG)) {
+            Log.log(Log.DEBUG, (move.getPlayer() == 1 ? "White" : "Black") + " has played: " + move.toString());
+        }
         if (!move.isCapture() && state == 0) {
             if (currentPlayer == WHITE) {
                 currentPlayer = BLACK;
@@ -73,189 +198,493 @@ public class Board {
         return state;
     }
 
+    /*
+    Reverses the last move made with makeMove, removing it from the move sequence and turn count as well
+    Only moves made since the board was created, cloned or positioned can be taken back
+     */
+    public void unmakeMove() {
+        if (undoSize == 0 || moveSequence.isEmpty()) {
+            throw new IllegalStateException("No move to take back");
+        }
+        undoMove();
+        moveSequence.remove(moveSequence.size() - 1);
+        totalTurns--;
+    }
+
     //Returns the list of moves carried out on the board
     public ArrayList<Move> getMoveSequence() {
         return moveSequence;
     }
 
-    /*Carries out the changes to the board passed through the parameters
-    //either the current board is passed through when a move is made, or evaluation function
-    uses it to evaluate potential effect of moves
-    */
-    private void doMove(int[][] board, Move move) {
-        board[move.targetRow][move.targetColumn] = board[move.fromRow][move.fromColumn];
-        board[move.fromRow][move.fromColumn] = EMPTY;
+    /*
+    Makes a move in place so that it can be reversed with undoMove
+    The side to move changes unless the move is a capture, matching makeMove
+    Unlike makeMove the move sequence, turn count and game state are left alone, so this is meant for
+    evaluation and search which try a move, look at the position and then take it back
+    The move's own player is the one who moved, so a game record where the opponent answers a capture,
+    as in standard PDN where the turn ends after a capture, can be played back with the same calls
+     */
+    public void doMove(Move move) {
+        playHops(move);
+        int player = move.getPlayer();
+        currentPlayer = move.isCapture() ? player : player == WHITE ? BLACK : WHITE;
+    }
 
-        if (move.targetRow == 0) {
-            if (board[move.targetRow][move.targetColumn] == WHITE) {
-                board[move.targetRow][move.targetColumn] = WHITE_KING;
+    //Same as doMove for a move packed into an int by generateMoves (see Move.encode)
+    public void doMove(int move) {
+        playMove(Move.getFromSquare(move), Move.getTargetSquare(move), Move.isCapture(move));
+        int player = Move.getPlayer(move);
+        currentPlayer = Move.isCapture(move) ? player : player == WHITE ? BLACK : WHITE;
+    }
+
+    /*
+    Reverses the last move made with doMove or makeMove, restoring any captured piece,
+    removing a promotion and giving the turn back to the player who moved
+     */
+    public void undoMove() {
+        int record;
+        do {
+            record = undoStack[--undoSize];
+            undoRecord(record);
+        } while ((record & UNDO_CHAINED) != 0);
+    }
+
+    //Reverses the single hop or step described by an undo record
+    private void undoRecord(int record) {
+        int fromSquare = record & 31;
+        int targetSquare = (record >>> 5) & 31;
+        int capturedSquare = (record >>> 10) & 31;
+        int capturedPiece = (record >>> 15) & 7;
+        int from = 1 << fromSquare;
+        int target = 1 << targetSquare;
+        int movedPiece = pieceAt(whiteBits, blackBits, kingBits, targetSquare);
+        int originalPiece = (record & UNDO_PROMOTED) != 0 ? movedPiece - 2 : movedPiece;
+        pieceHash ^= Zobrist.piece(movedPiece, targetSquare) ^ Zobrist.piece(originalPiece, fromSquare);
+        int[] squareScores = scoreWeights.squareScores;
+        materialScore += squareScores[originalPiece * 32 + fromSquare] - squareScores[movedPiece * 32 + targetSquare];
+        if (accumulator != null) {
+            accumulator.move(movedPiece, targetSquare, originalPiece, fromSquare);
+        }
+
+        if ((whiteBits & target) != 0) {
+            whiteBits = (whiteBits & ~target) | from;
+        } else {
+            blackBits = (blackBits & ~target) | from;
+        }
+        if ((kingBits & target) != 0) {
+            kingBits &= ~target;
+            if ((record & UNDO_PROMOTED) == 0) {
+                kingBits |= from;
             }
         }
-        if (move.targetRow == 7) {
-            if (board[move.targetRow][move.targetColumn] == BLACK) {
-                board[move.targetRow][move.targetColumn] = BLACK_KING;
+        if (capturedPiece != EMPTY) {
+            int captured = 1 << capturedSquare;
+            if (capturedPiece == WHITE || capturedPiece == WHITE_KING) {
+                whiteBits |= captured;
+            } else {
+                blackBits |= captured;
+            }
+            if (capturedPiece == WHITE_KING || capturedPiece == BLACK_KING) {
+                kingBits |= captured;
             }
+            pieceHash ^= Zobrist.piece(capturedPiece, capturedSquare);
+            materialScore += squareScores[capturedPiece * 32 + capturedSquare];
+            if (accumulator != null) {
+                accumulator.add(capturedPiece, capturedSquare);
+            }
+            adjustCount(capturedPiece, 1);
         }
-        if (move.isCapture()) {
-            int middleRow = (move.fromRow + move.targetRow) / 2;
-            int middleColumn = (move.fromColumn + move.targetColumn) / 2;
-            board[middleRow][middleColumn] = EMPTY;
+        if ((record & UNDO_PROMOTED) != 0) {
+            adjustCount(movedPiece, -1);
+            adjustCount(originalPiece, 1);
         }
+        currentPlayer = (record >>> 19) & 3;
+        boardView = null;
     }
 
     /*
-    Calculates how many of each piece are on the board and returns the state of the board
+    Plays a move, hop by hop for a compound move (see Move.isCompound)
+    Every hop after the first is marked as chained, so one undoMove takes back the whole move
+     */
+    private void playHops(Move move) {
+        if (!move.isCompound()) {
+            playMove(move.fromSquare(), move.targetSquare(), move.isCapture());
+            return;
+        }
+        for (int hop = 0; hop < move.getHops(); hop++) {
+            playMove(move.pathSquare(hop), move.pathSquare(hop + 1), true);
+            if (hop > 0) {
+                undoStack[undoSize - 1] |= UNDO_CHAINED;
+            }
+        }
+    }
+
+    /*
+    Carries out the changes to the bitboards when a move is made and pushes an undo record
+    Undo record layout: from square (5 bits), target square (5), captured square (5), captured piece (3),
+    promoted flag (1), the player to move before the move (2) and the chained flag (1)
+     */
+    private void playMove(int fromSquare, int targetSquare, boolean capture) {
+        int capturedSquare = capture ? square((SQUARE_ROW[fromSquare] + SQUARE_ROW[targetSquare]) / 2, (SQUARE_COLUMN[fromSquare] + SQUARE_COLUMN[targetSquare]) / 2) : 0;
+        int capturedPiece = capture ? pieceAt(whiteBits, blackBits, kingBits, capturedSquare) : EMPTY;
+        int from = 1 << fromSquare;
+        int target = 1 << targetSquare;
+        int captured = capturedPiece != EMPTY ? 1 << capturedSquare : 0;
+        int movedPiece = pieceAt(whiteBits, blackBits, kingBits, fromSquare);
+
+        if ((whiteBits & from) != 0) {
+            whiteBits = (whiteBits & ~from) | target;
+        } else {
+            blackBits = (blackBits & ~from) | target;
+        }
+        if ((kingBits & from) != 0) {
+            kingBits = (kingBits & ~from) | target;
+        }
+        whiteBits &= ~captured;
+        blackBits &= ~captured;
+        kingBits &= ~captured;
+
+        //Men are promoted to kings when they reach the far row
+        boolean promoted = (kingBits & target) == 0 && ((whiteBits & target & WHITE_CROWN) != 0 || (blackBits & target & BLACK_CROWN) != 0);
+        if (promoted) {
+            kingBits |= target;
+        }
+        int endPiece = promoted ? movedPiece + 2 : movedPiece;
+        pieceHash ^= Zobrist.piece(movedPiece, fromSquare) ^ Zobrist.piece(endPiece, targetSquare);
+        int[] squareScores = scoreWeights.squareScores;
+        materialScore += squareScores[endPiece * 32 + targetSquare] - squareScores[movedPiece * 32 + fromSquare];
+        if (accumulator != null) {
+            accumulator.move(movedPiece, fromSquare, endPiece, targetSquare);
+        }
+        if (capturedPiece != EMPTY) {
+            pieceHash ^= Zobrist.piece(capturedPiece, capturedSquare);
+            materialScore -= squareScores[capturedPiece * 32 + capturedSquare];
+            if (accumulator != null) {
+                accumulator.remove(capturedPiece, capturedSquare);
+            }
+            adjustCount(capturedPiece, -1);
+        }
+        if (promoted) {
+            adjustCount(movedPiece, -1);
+            adjustCount(movedPiece + 2, 1);
+        }
+
+        if (undoSize == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+        }
+        undoStack[undoSize++] = fromSquare | targetSquare << 5 | capturedSquare << 10 | capturedPiece << 15
+                | (promoted ? UNDO_PROMOTED : 0) | currentPlayer << 19;
+        boardView = null;
+    }
+
+    //Keeps the piece counters up to date as pieces are captured, restored or promoted
+    private void adjustCount(int piece, int change) {
+        switch (piece) {
+            case WHITE:
+                whitePieces += change;
+                break;
+            case BLACK:
+                blackPieces += change;
+                break;
+            case WHITE_KING:
+                whiteKingPieces += change;
+                break;
+            case BLACK_KING:
+                blackKingPieces += change;
+                break;
+        }
+    }
+
+    /*
+    Returns the state of the board from the piece counters, which playMove keeps up to date
     0 - Game ongoing
     1 - White has won the game
     2 - Black has won the game
      */
     private int calculateBoardConditions() {
-        this.whitePieces = 0;
-        this.blackPieces = 0;
-        this.whiteKingPieces = 0;
-        this.blackKingPieces = 0;
-
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                switch(board[r][c]) {
-                    case WHITE:
-                        whitePieces++;
-                        break;
-                    case BLACK:
-                        blackPieces++;
-                        break;
-                    case WHITE_KING:
-                        whiteKingPieces++;
-                        break;
-                    case BLACK_KING:
-                        blackKingPieces++;
-                        break;
-                }
-            }
-        }
         if (whitePieces == 0 && whiteKingPieces == 0) {
             return BLACK;
         } else if (blackPieces == 0 && blackKingPieces == 0) {
             return WHITE;
         }
-        if (getLegalMoves(getCurrentPlayer()).size() == 0) {  //Returns a win condition if a player has no valid moves
+        if (!hasLegalMove(getCurrentPlayer())) {  //Returns a win condition if a player has no valid moves
             return getCurrentPlayer() == WHITE ? BLACK : WHITE;
         }
         return 0;
     }
 
+    //Recounts each type of piece and the material score from the bitboards
+    private void countPieces() {
+        this.whitePieces = Integer.bitCount(whiteBits & ~kingBits);
+        this.blackPieces = Integer.bitCount(blackBits & ~kingBits);
+        this.whiteKingPieces = Integer.bitCount(whiteBits & kingBits);
+        this.blackKingPieces = Integer.bitCount(blackBits & kingBits);
+        rescore(weights);
+        accumulator = null; //Rebuilt by evaluate if a network is set
+    }
+
+    //Works out materialScore from the bitboards with the given weights, which later moves then keep it up to date with
+    private void rescore(EvalWeights w) {
+        scoreWeights = w;
+        materialScore = pieceScore(whiteBits, kingBits, WHITE, w) - pieceScore(blackBits, kingBits, BLACK, w);
+    }
+
+    /*
+    Returns the Zobrist key of the position, covering every piece and the player to move
+    The piece part is updated incrementally as moves are made and taken back
+     */
+    public long getHash() {
+        return currentPlayer == BLACK ? pieceHash ^ Zobrist.BLACK_TO_MOVE : pieceHash;
+    }
+
+    @Override
+    public int getMaxMoves() {
+        return MAX_MOVES;
+    }
+
+    @Override
+    public int getCaptureFlag() {
+        return Move.CAPTURE_FLAG;
+    }
+
+    //Moves are known by from square + target square * 32, as in Move.encode
+    @Override
+    public int getMoveKeyBits() {
+        return 10;
+    }
+
+    //Returns how many pieces, men and kings, a player has left
+    public int getPieceCount(int player) {
+        return player == WHITE ? whitePieces + whiteKingPieces : blackPieces + blackKingPieces;
+    }
+
     //Method used to simplify method call for current board
     public ArrayList<Move> getLegalMoves(int player) {
-        return getLegalMoves(this.board, player);
+        int[] moves = new int[MAX_MOVES];
+        int count = generateMoves(player, moves);
+        ArrayList<Move> legalMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legalMoves.add(Move.of(moves[i]));
+        }
+        return legalMoves;
     }
 
-    /*Returns the legal moves that a player has given a board array, used by evaluation
-    function and by the previous method
-    */
-    private ArrayList<Move> getLegalMoves(int[][] boardState, int player) {
-        ArrayList<Move> legalMoves = new ArrayList<>();
-        int playerKing = player == WHITE ? WHITE_KING : BLACK_KING;
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                if (boardState[r][c] == player || boardState[r][c] == playerKing) {
-                    if (isLegalCapture(boardState, player, r, c, r+1, c+1, r+2, c+2))
-                        legalMoves.add(new Move(player, r, c, r+2, c+2));
-                    if (isLegalCapture(boardState, player, r, c, r-1, c+1, r-2, c+2))
-                        legalMoves.add(new Move(player, r, c, r-2, c+2));
-                    if (isLegalCapture(boardState, player, r, c, r+1, c-1, r+2, c-2))
-                        legalMoves.add(new Move(player, r, c, r+2, c-2));
-                    if (isLegalCapture(boardState, player, r, c, r-1, c-1, r-2, c-2))
-                        legalMoves.add(new Move(player, r, c, r-2, c-2));
-                    if (isLegalMove(boardState, player,r,c,r+1,c+1))
-                        legalMoves.add(new Move(player, r,c,r+1,c+1));
-                    if (isLegalMove(boardState, player,r,c,r-1,c+1))
-                        legalMoves.add(new Move(player, r,c,r-1,c+1));
-                    if (isLegalMove(boardState, player,r,c,r+1,c-1))
-                        legalMoves.add(new Move(player, r,c,r+1,c-1));
-                    if (isLegalMove(boardState, player,r,c,r-1,c-1))
-                        legalMoves.add(new Move(player, r ,c,r-1,c-1));
-                }
+    /*
+    Returns the legal moves of a player, with each capture followed through to the end of its jump sequence
+    if compoundJumps is true. A piece that can capture gets one move per distinct position its jumps can end in:
+    a single capture when nothing more can be jumped after it, otherwise a compound move of every hop
+    Paths that take the same pieces and end on the same square lead to the same position and are only listed once
+    As with any capture, the player still has the move after a compound move
+     */
+    public ArrayList<Move> getLegalMoves(int player, boolean compoundJumps) {
+        if (!compoundJumps) {
+            return getLegalMoves(player);
+        }
+        int[] moves = new int[MAX_MOVES];
+        int count = generateMoves(player, moves);
+        ArrayList<Move> legalMoves = new ArrayList<>(count);
+        HashSet<Long> endings = new HashSet<>();
+        int[] path = new int[33];
+        int expanded = 0; //Pieces whose jumps have been followed
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = Move.getFromSquare(move);
+            if (!Move.isCapture(move)) {
+                legalMoves.add(Move.of(move));
+            } else if ((expanded & (1 << from)) == 0) {
+                expanded |= 1 << from;
+                path[0] = from;
+                addJumpPaths(player, path, 0, endings, legalMoves);
             }
         }
         return legalMoves;
     }
 
     /*
-    Used to evaluate whether a potential move abides by the rules of a capture
+    Follows every jump the piece at the end of the path can make, adding a move each time a path can go no further
+    The jumps are played on the board while they are followed and taken back afterwards
      */
-    private boolean isLegalCapture(int[][] boardState, int player, int fromRow, int fromColumn, int middleRow, int middleColumn, int targetRow, int targetColumn) {
-
-        if (targetRow < 0 || targetRow >= 8 || targetColumn < 0 || targetColumn >= 8) {
-            return false;
+    private void addJumpPaths(int player, int[] path, int hops, HashSet<Long> endings, ArrayList<Move> legalMoves) {
+        int sq = path[hops];
+        int from = 1 << sq;
+        findMovers(player);
+        int directions = 0;
+        for (int d = 0; d < 4; d++) {
+            if ((captureMasks[d] & from) != 0) {
+                directions |= 1 << d;
+            }
         }
-        if (boardState[middleRow][middleColumn] == EMPTY) { //There must be a piece to capture
-            return false;
+        if (directions == 0) {
+            if (hops > 0 && endings.add(getHash())) {
+                legalMoves.add(hops == 1 ? Move.of(Move.encode(player, path[0], path[1], true)) : new Move(player, Arrays.copyOf(path, hops + 1)));
+            }
+            return;
         }
-        if (boardState[targetRow][targetColumn] != EMPTY) { //The space behind the target capture must be empty
-            return false;
+        for (int d = 0; d < 4; d++) {
+            if ((directions & (1 << d)) != 0) {
+                path[hops + 1] = JUMP_TARGET[d][sq];
+                playMove(sq, path[hops + 1], true);
+                addJumpPaths(player, path, hops + 1, endings, legalMoves);
+                undoMove();
+            }
         }
-        if (player == WHITE) {
-            if (boardState[fromRow][fromColumn] == WHITE_KING) { //King pieces can move in any direction
-                return true;
+    }
+
+    /*
+    Writes the legal moves of a player into the buffer as packed ints (see Move.encode) and returns how many there are
+    The buffer needs room for MAX_MOVES moves. Nothing is allocated, so the search can reuse one buffer per ply
+    The moves for every direction are found at once with shifts, then each piece is visited in square order
+    so that the moves come out in the same order as the original row by row scan
+    */
+    public int generateMoves(int player, int[] buffer) {
+        int own = player == WHITE ? whiteBits : blackBits;
+        int[] captures = captureMasks;
+        int[] moves = moveMasks;
+        findMovers(player);
+
+        int count = 0;
+        int pieces = own & (captures[0] | captures[1] | captures[2] | captures[3] | moves[0] | moves[1] | moves[2] | moves[3]);
+        while (pieces != 0) {
+            int sq = Integer.numberOfTrailingZeros(pieces);
+            int from = 1 << sq;
+            pieces ^= from;
+            for (int d = 0; d < 4; d++) {
+                if ((captures[d] & from) != 0) {
+                    buffer[count++] = Move.encode(player, sq, JUMP_TARGET[d][sq], true);
+                }
             }
-            if (targetRow <= fromRow) { //Normal game pieces are limited in movement
-                if (boardState[middleRow][middleColumn] == BLACK || boardState[middleRow][middleColumn] == BLACK_KING) {
-                    return true;
+            for (int d = 0; d < 4; d++) {
+                if ((moves[d] & from) != 0) {
+                    buffer[count++] = Move.encode(player, sq, STEP_TARGET[d][sq], false);
                 }
             }
-            return false;
         }
-        else {
-            if (boardState[fromRow][fromColumn] == BLACK_KING) { //King pieces can move in any direction
+        return count;
+    }
+
+    /*
+    Returns whether a player has any legal move, stopping at the first direction that has one
+    Cheaper than generating the moves when only the game state is needed
+     */
+    public boolean hasLegalMove(int player) {
+        int own = player == WHITE ? whiteBits : blackBits;
+        int opponent = player == WHITE ? blackBits : whiteBits;
+        int empty = ~(whiteBits | blackBits);
+        int kings = own & kingBits;
+        int men = own & ~kingBits;
+        for (int d = 0; d < 4; d++) {
+            int back = OPPOSITE[d];
+            boolean forward = player == WHITE ? rowStep(d) < 0 : rowStep(d) > 0;
+            int landing = shift(empty, back);
+            if (((forward ? own : kings) & landing) != 0) {
                 return true;
             }
-            if (targetRow >= fromRow) { //Normal game pieces are limited in movement
-                if (boardState[middleRow][middleColumn] == WHITE || boardState[middleRow][middleColumn] == WHITE_KING) {
-                    return true;
-                }
+            if ((kings & shift(~empty & landing, back)) != 0 || (forward && (men & shift(opponent & landing, back)) != 0)) {
+                return true;
             }
-            return false;
         }
+        return false;
     }
 
     /*
-    Used to evaluate whether a potential move abides by the rules of the game
+    Writes the steps the player could have just played to reach this position, as packed moves (see Move.encode),
+    and returns how many there are. Captures and promotions are left out, so every piece is taken to have been
+    the same kind of piece before it stepped. Used by TablebaseBuilder to go back from a solved position
+    to the positions that lead to it. The buffer needs room for MAX_MOVES moves
      */
-    private boolean isLegalMove(int[][] boardState, int player, int fromRow, int fromColumn, int targetRow, int targetColumn) {
+    int generateUnmoves(int player, int[] buffer) {
+        int own = player == WHITE ? whiteBits : blackBits;
+        int empty = ~(whiteBits | blackBits);
+        int kings = own & kingBits;
+        int count = 0;
+        for (int d = 0; d < 4; d++) {
+            boolean forward = player == WHITE ? rowStep(d) < 0 : rowStep(d) > 0;
+            int back = OPPOSITE[d];
+            int arrived = (forward ? own : kings) & shift(empty, d); //Pieces whose square behind them in direction d is empty
+            while (arrived != 0) {
+                int sq = Integer.numberOfTrailingZeros(arrived);
+                arrived &= arrived - 1;
+                buffer[count++] = Move.encode(player, STEP_TARGET[back][sq], sq, false);
+            }
+        }
+        return count;
+    }
 
-        if (targetRow < 0 || targetRow >= 8 || targetColumn < 0 || targetColumn >= 8) {
-            return false;
+    /*
+    Fills captureMasks[d] and moveMasks[d] with the pieces that can capture or move in direction d
+    Men may only go towards the opponent and must jump an opponent piece,
+    kings may go in any direction and jump over any piece
+     */
+    private void findMovers(int player) {
+        int own = player == WHITE ? whiteBits : blackBits;
+        int opponent = player == WHITE ? blackBits : whiteBits;
+        int empty = ~(whiteBits | blackBits);
+        int kings = own & kingBits;
+        int men = own & ~kingBits;
+        for (int d = 0; d < 4; d++) {
+            int back = OPPOSITE[d];
+            boolean forward = player == WHITE ? rowStep(d) < 0 : rowStep(d) > 0;
+            int landing = shift(empty, back); //Squares whose neighbour in direction d is empty
+            int movers = forward ? own : kings;
+            moveMasks[d] = movers & landing;
+            captureMasks[d] = kings & shift(~empty & landing, back);
+            if (forward) {
+                captureMasks[d] |= men & shift(opponent & landing, back);
+            }
         }
-        if (boardState[targetRow][targetColumn] != EMPTY) {
-            return false;
+    }
+
+    /*
+    Shifts every piece in a bitboard one square in the given direction, dropping pieces that would leave the board
+     */
+    private static int shift(int bits, int direction) {
+        switch (direction) {
+            case DOWN_RIGHT:
+                return ((bits & EVEN_ROWS) << 4) | ((bits & ODD_ROWS_NOT_RIGHT) << 5);
+            case UP_RIGHT:
+                return ((bits & EVEN_ROWS) >>> 4) | ((bits & ODD_ROWS_NOT_RIGHT) >>> 3);
+            case DOWN_LEFT:
+                return ((bits & EVEN_ROWS_NOT_LEFT) << 3) | ((bits & ODD_ROWS) << 4);
+            default:
+                return ((bits & EVEN_ROWS_NOT_LEFT) >>> 5) | ((bits & ODD_ROWS) >>> 4);
         }
-        if (player == WHITE) {
-            return boardState[fromRow][fromColumn] != WHITE || targetRow <= fromRow;
+    }
+
+    private static int rowStep(int direction) {
+        return direction == DOWN_RIGHT || direction == DOWN_LEFT ? 1 : -1;
+    }
+
+    private static int columnStep(int direction) {
+        return direction == DOWN_RIGHT || direction == UP_RIGHT ? 1 : -1;
+    }
+
+    //Converts board coordinates to a square index, only valid for playable squares
+    private static int square(int row, int column) {
+        return (row << 2) + (column >> 1);
+    }
+
+    //Returns the piece on a square in the same form as the board array (EMPTY, WHITE, BLACK, WHITE_KING, BLACK_KING)
+    private static int pieceAt(int whiteBits, int blackBits, int kingBits, int sq) {
+        int bit = 1 << sq;
+        if ((whiteBits & bit) != 0) {
+            return (kingBits & bit) != 0 ? WHITE_KING : WHITE;
         }
-        else {
-            return boardState[fromRow][fromColumn] != BLACK || targetRow >= fromRow;
+        if ((blackBits & bit) != 0) {
+            return (kingBits & bit) != 0 ? BLACK_KING : BLACK;
         }
+        return EMPTY;
     }
 
     /*
     Initialises the board positions of a starting game and randomises the starting player
      */
     private void setupGame() {
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                if ( row % 2 == col % 2 ) {
-                    if (row < 3)
-                        board[row][col] = BLACK;
-                    else if (row > 4)
-                        board[row][col] = WHITE;
-                    else
-                        board[row][col] = EMPTY;
-                }
-                else {
-                    board[row][col] = EMPTY;
-                }
-            }
-        }
+        whiteBits = WHITE_START;
+        blackBits = BLACK_START;
+        kingBits = 0;
+        pieceHash = Zobrist.hash(whiteBits, blackBits, kingBits);
+        countPieces();
+        boardView = null;
         Random r = new Random();
         this.currentPlayer = r.nextInt(2) + 1;
     }
@@ -268,25 +697,105 @@ public class Board {
     }
 
     /*
-    Prints to the console the current game board array formatted to appear like a game board
+    Logs the current game board array formatted to appear like a game board, at debug level
      */
     public void printBoard() {
-        System.out.println("\nTurn: " + totalTurns);
-        System.out.println("Game board:");
+        if (!Log.isEnabled(Log.DEBUG)) {
+            return;
+        }
+        int[][] board = getBoard();
+        StringBuilder text = new StringBuilder("\nTurn: ").append(totalTurns).append("\nGame board:");
         for (int i = 0; i < 8; i++) {
+            text.append('\n');
             for (int j = 0; j < 8; j++) {
-                System.out.print(board[i][j]);
-                System.out.print("   ");
+                text.append(board[i][j]).append("   ");
             }
-            System.out.print("\n");
         }
+        Log.log(Log.DEBUG, text.toString());
+    }
+
+    /*
+    Creates a board from a position string in the PDN FEN style "W:W21,22,K30:B1,2,K9"
+    The first letter is the player to move, then the white and black pieces are listed by square number,
+    with K in front of kings. Squares have the standard PDN numbers, 1 - 32 row by row from black's side (row 0)
+    Board's columns are the mirror image of the usual diagram, so each row is numbered from its highest column down:
+    square 1 is [0, 6], square 4 is [0, 0] and square 32 is [7, 1] (see squareOfNumber)
+     */
+    public static Board fromFen(String fen) {
+        String[] parts = fen.trim().split(":");
+        if (parts.length != 3 || !(parts[0].equals("W") || parts[0].equals("B"))) {
+            throw new IllegalArgumentException("Invalid position: " + fen);
+        }
+        int[] bits = new int[3];
+        for (int i = 1; i < 3; i++) {
+            String list = parts[i];
+            int colour = list.startsWith("W") ? 0 : list.startsWith("B") ? 1 : -1;
+            if (colour < 0) {
+                throw new IllegalArgumentException("Invalid position: " + fen);
+            }
+            for (String piece : list.substring(1).split(",")) {
+                piece = piece.trim();
+                if (piece.isEmpty()) {
+                    continue;
+                }
+                boolean king = piece.startsWith("K");
+                int number = Integer.parseInt(king ? piece.substring(1) : piece);
+                if (number < 1 || number > 32) {
+                    throw new IllegalArgumentException("Invalid square " + number + " in position: " + fen);
+                }
+                int bit = 1 << squareOfNumber(number);
+                bits[colour] |= bit;
+                if (king) {
+                    bits[2] |= bit;
+                }
+            }
+        }
+        if ((bits[0] & bits[1]) != 0) {
+            throw new IllegalArgumentException("A square holds both a white and a black piece: " + fen);
+        }
+        return new Board(bits[0], bits[1], bits[2], new ArrayList<Move>(), parts[0].equals("W") ? WHITE : BLACK, 1);
+    }
+
+    //Returns the position as a string that fromFen can read back, with each side's pieces in square number order
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(currentPlayer == WHITE ? "W" : "B");
+        for (int colour = 0; colour < 2; colour++) {
+            int pieces = colour == 0 ? whiteBits : blackBits;
+            fen.append(colour == 0 ? ":W" : ":B");
+            boolean first = true;
+            for (int number = 1; number <= 32; number++) {
+                int bit = 1 << squareOfNumber(number);
+                if ((pieces & bit) == 0) {
+                    continue;
+                }
+                if (!first) {
+                    fen.append(',');
+                }
+                fen.append((kingBits & bit) != 0 ? "K" : "").append(number);
+                first = false;
+            }
+        }
+        return fen.toString();
+    }
+
+    /*
+    Converts between Board's square indices and the standard PDN square numbers used in positions and move text
+    Standard square n is on row (n - 1) / 4 like Board's square n - 1, but counted from the other end of the row,
+    which flips the low two bits
+     */
+    public static int squareOfNumber(int number) {
+        return (number - 1) ^ 3;
+    }
+
+    public static int numberOfSquare(int sq) {
+        return (sq ^ 3) + 1;
     }
 
     /*
     Returns a clone of the current board for evaluation function
      */
     public Board cloneBoard() {
-        return new Board(getCurrentBoardClone(), getMoveSequenceClone(), currentPlayer, totalTurns);
+        return new Board(whiteBits, blackBits, kingBits, getMoveSequenceClone(), currentPlayer, totalTurns);
     }
 
     /*
@@ -297,29 +806,30 @@ public class Board {
     }
 
     /*
-    Carries out a deep copy of the current board array state for use in cloning
+    Parent evaluation function
+    Runs the engine's alpha-beta search on this board and returns the move it settles on
+    The board is searched in place with doMove/undoMove and is left as it was found
+    Endgames are looked up instead if the engine has a tablebase, see Engine.setTablebase and TablebaseBuilder,
+    and openings are played from the engine's opening book if it has one, see Engine.setOpeningBook
      */
-    private int[][] getCurrentBoardClone() {
-        int[][] copy = new int[8][8];
-        for (int i = 0; i < 8; i++) {
-            System.arraycopy(board[i], 0, copy[i], 0, 8);
+    public Move calculateBestMove() {
+        SearchResult result = getEngine().search(this);
+        if (Log.isEnabled(Log.DEBUG)) {
+            Log.log(Log.DEBUG, "AI search: " + result.toString());
         }
-        return copy;
+        return result.getBestMove();
     }
 
     /*
-    Parent evaluation function
-    Obtains list of legal moves for the current player
-    Calculates which move scores the best from the evaluation function getMoveScore
+    The previous one ply move picker, kept for comparison against the search
+    Scores every legal move with getMoveScore and returns the highest scoring one
      */
-    public Move calculateBestMove() {
+    public Move calculateGreedyMove() {
         ArrayList<Move> legalMoves = getLegalMoves(currentPlayer);
         Move bestMove = legalMoves.get(0);
         int bestMoveScore = getMoveScore(legalMoves.get(0));
-        System.out.println("Legal moves for AI turn: ");
         for (Move m : legalMoves) {
             int moveScore = getMoveScore(m);
-            System.out.println(m.toString() + " Score: " + moveScore);
             if (moveScore > bestMoveScore) {
                 bestMoveScore = moveScore;
                 bestMove = m;
@@ -329,82 +839,156 @@ public class Board {
     }
 
     /*
-    The evaluation function that uses heuristics to score a potential move
+    Returns the engine used by calculateBestMove, shared by every board
+    The default engine and its transposition table are only created the first time one is asked for,
+    so classes that use Board without searching do not pay for them
+     */
+    public static Engine getEngine() {
+        Engine current = engine;
+        return current != null ? current : DefaultEngine.ENGINE;
+    }
 
+    //Holds the default engine, the JVM creates it when this class is first used
+    private static final class DefaultEngine {
+        static final Engine ENGINE = new Engine();
+    }
+
+    //Replaces the engine used by calculateBestMove, for example to change the search depth
+    public static void setEngine(Engine engine) {
+        Board.engine = engine;
+    }
+
+    /*
+    The evaluation function that uses heuristics to score a potential move
+    The weights of each part come from getWeights, see EvalWeights
      */
-    private int getMoveScore(Move move) {
+    int getMoveScore(Move move) {
+        EvalWeights w = weights;
         int actingPlayer = move.getPlayer();
         int opponent = actingPlayer == WHITE ? BLACK : WHITE;
-        int moveScore = 0;
-        int[][] copy = getCurrentBoardClone();
-
-        doMove(copy, move);
-
-        for (int r = 0; r < 8; r++) {       //Scores each game piece on the board based on factors
-            for (int c = 0; c < 8; c++) {
-                if (copy[r][c] == actingPlayer) {
-                    moveScore = moveScore + 10;
-                    if (actingPlayer == WHITE && r < 4) {
-                        moveScore = moveScore + 5; //Rewards white pieces that are in the opponents side of the board
-                    }
-                    else if (actingPlayer == BLACK && r > 3) {
-                        moveScore = moveScore + 5; //Rewards black pieces that are in the opponents side of the board
-                    }
-                }
-                if (copy[r][c] == actingPlayer + 2) {
-                    moveScore = moveScore + 20;
-                }
-                if (copy[r][c] == opponent) {
-                    moveScore = moveScore - 10;
-                    if (opponent == WHITE && r < 4) {
-                        moveScore = moveScore - 5;
-                    }
-                    else if (opponent == BLACK && r > 3) {
-                        moveScore = moveScore - 5;
-                    }
-                }
-                if (copy[r][c] == opponent + 2) {
-                    moveScore  = moveScore - 20;
-                }
-            }
-        }
+        int player = currentPlayer;
+        boolean kinged = becomesKing(move);
+
+        doMove(move); //The move is tried on this board and taken back once it has been scored
+
+        int moveScore = evaluate(actingPlayer);
 
         /*
         Adds value if future moves are captures and removes value if the move would endanger players game pieces
          */
         if (move.isCapture()) {
-            ArrayList<Move> legalMoves = getLegalMoves(copy, currentPlayer);
-            for (Move m : legalMoves) {
-                if (m.isCapture()) {
-                    moveScore = moveScore + 20;
-                }
-            }
+            moveScore = moveScore + w.captureBonus * countCaptures(player);
         } else {
-            ArrayList<Move> legalMoves = getLegalMoves(copy, opponent);
-            for (Move m : legalMoves) {
-                if (m.isCapture()) {
-                    moveScore = moveScore - 30;
-                }
-            }
+            moveScore = moveScore - w.threatPenalty * countCaptures(opponent);
         }
-        if (becomesKing(move)) {
-            moveScore = moveScore + 20;
+        undoMove();
+        if (kinged) {
+            moveScore = moveScore + w.crownBonus;
         }
 
         return moveScore;
     }
 
+    /*
+    Fills features with what getMoveScore counts for the move, one entry per weight of EvalWeights, so that
+    getMoveScore is the sum of each feature times its weight. Used by Tuner to fit the weights to game results
+     */
+    void getMoveFeatures(Move move, int[] features) {
+        int actingPlayer = move.getPlayer();
+        int opponent = actingPlayer == WHITE ? BLACK : WHITE;
+        int player = currentPlayer;
+        boolean kinged = becomesKing(move);
+
+        doMove(move);
+        int own = actingPlayer == WHITE ? whiteBits : blackBits;
+        int opposing = actingPlayer == WHITE ? blackBits : whiteBits;
+        int ownMen = own & ~kingBits;
+        int opposingMen = opposing & ~kingBits;
+        features[EvalWeights.MAN] = Integer.bitCount(ownMen) - Integer.bitCount(opposingMen);
+        features[EvalWeights.ADVANCED_MAN] = Integer.bitCount(ownMen & (actingPlayer == WHITE ? WHITE_HALF : BLACK_HALF))
+                - Integer.bitCount(opposingMen & (opponent == WHITE ? WHITE_HALF : BLACK_HALF));
+        features[EvalWeights.KING] = Integer.bitCount(own & kingBits) - Integer.bitCount(opposing & kingBits);
+        features[EvalWeights.CAPTURE_BONUS] = move.isCapture() ? countCaptures(player) : 0;
+        features[EvalWeights.THREAT_PENALTY] = move.isCapture() ? 0 : -countCaptures(opponent);
+        undoMove();
+        features[EvalWeights.CROWN_BONUS] = kinged ? 1 : 0;
+    }
+
+    /*
+    Scores each game piece on the board based on factors, from the point of view of the given player
+    This is the piece scoring part of getMoveScore and is used on its own at the leaves of the search
+    The score is kept up to date as moves are made and taken back, so this only has to read it.
+    It is the same as scoring every piece with pieceScore, which is done again only if the weights have been replaced
+    With a network set the network's evaluation is returned instead, from an accumulator kept up to date the same way
+     */
+    public int evaluate(int player) {
+        NnueNetwork net = network;
+        if (net != null) {
+            if (accumulator == null || accumulator.network != net) {
+                accumulator = new NnueNetwork.Accumulator(net, whiteBits, blackBits, kingBits);
+            }
+            return accumulator.evaluate(player);
+        }
+        accumulator = null;
+        if (scoreWeights != weights) {
+            rescore(weights);
+        }
+        return player == WHITE ? materialScore : -materialScore;
+    }
+
+    /*
+    Scores one side's pieces: by default 10 for a man, 20 for a king and 5 extra for a man in the opponents side of the board
+     */
+    private static int pieceScore(int pieces, int kingBits, int player, EvalWeights w) {
+        int men = pieces & ~kingBits;
+        int advanced = men & (player == WHITE ? WHITE_HALF : BLACK_HALF);
+        return w.man * Integer.bitCount(men) + w.advancedMan * Integer.bitCount(advanced) + w.king * Integer.bitCount(pieces & kingBits);
+    }
+
+    //Returns the network used by evaluate, or null when the handcrafted evaluation is used
+    public static NnueNetwork getNetwork() {
+        return network;
+    }
+
+    /*
+    Makes every board evaluate positions with the network (see NnueNetwork), null to go back to the handcrafted evaluation
+    The capture, threat and crowning terms of getMoveScore are still added to the network's evaluation
+     */
+    public static void setNetwork(NnueNetwork network) {
+        Board.network = network;
+    }
+
+    //Returns the evaluation weights used by every board
+    public static EvalWeights getWeights() {
+        return weights;
+    }
+
+    /*
+    Replaces the evaluation weights used by every board, for example with weights written by Tuner
+    Searches already running may see either set of weights
+     */
+    public static void setWeights(EvalWeights weights) {
+        Board.weights = weights;
+    }
+
+    //Counts the capture moves a player has, each piece and direction is one move
+    private int countCaptures(int player) {
+        findMovers(player);
+        return Integer.bitCount(captureMasks[0]) + Integer.bitCount(captureMasks[1]) + Integer.bitCount(captureMasks[2]) + Integer.bitCount(captureMasks[3]);
+    }
+
     /*
     Checks if a potential move, moves a game piece into a position that upgrades it to a king
      */
     private boolean becomesKing(Move move) {
+        int from = 1 << square(move.fromRow, move.fromColumn); //The man is still on its from square when this is called
         if (move.targetRow == 0) {
-            if (board[move.targetRow][move.targetColumn] == WHITE) {
+            if ((whiteBits & ~kingBits & from) != 0) {
                 return true;
             }
         }
         if (move.targetRow == 7) {
-            if (board[move.targetRow][move.targetColumn] == BLACK) {
+            if ((blackBits & ~kingBits & from) != 0) {
                 return true;
             }
         }
@@ -412,12 +996,15 @@ public class Board {
     }
 
     /*
-    Prints the game details post game
+    Logs the game details post game
      */
     public void printGameDetails() {
+        if (!Log.isEnabled(Log.INFO)) {
+            return;
+        }
         int i = 1;
         for (Move m : moveSequence) {
-            System.out.println("Move " + i + ": " + m.toString());
+            Log.log(Log.INFO, "Move " + i + ": " + m.toString());
             i++;
         }
     }
@@ -0,0 +1,427 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+Configures and runs the alpha-beta search used by the AI player
+The search is iterative deepening: depth 1, 2, 3... is searched until the maximum depth or node limit is reached,
+and the move from the deepest completed iteration is returned
+With a time per move or a game clock set, the search goes as deep as the time allows instead (see TimeManager)
+With more than one thread the search is Lazy SMP: helper threads search their own copies of the board at the
+same time and share the transposition table, so the main thread finds more of the tree already searched
+With a tablebase set, positions with few enough pieces are looked up instead of searched: at the root this picks the
+quickest win (or the slowest loss) straight away, and inside the search it scores endgame leaves exactly
+With an opening book set, positions in the book are answered with a book move and not searched at all
+A search can be stopped from another thread with stop, which is how a UI cancels the AI or ends pondering
+ */
+public class Engine implements SearchEngine {
+
+    private static final int DEFAULT_TABLE_BITS = 20; //2^20 entries, 16MB
+
+    private int maxDepth;
+    private long nodeLimit;
+    private long moveTime;
+    private long clockRemaining;
+    private long clockIncrement;
+    private TranspositionTable table;
+    private Tablebase tablebase;
+    private OpeningBook openingBook;
+    private final Random bookRandom = new Random();
+    private int threads = 1;
+    private ExecutorService helperPool;
+    private long generation; //Counts calls to stop, a search only runs while the generation it was started with is current
+    private final ArrayList<Search> running = new ArrayList<>();
+    private Search spareSearch; //The main search of the last run, kept so the next run reuses its buffers
+
+    //Creates an engine with the default depth of 6 and no node limit
+    public Engine() {
+        this(6, 0);
+    }
+
+    /*
+    Creates an engine that searches to maxDepth plies, or stops once nodeLimit positions have been visited
+    A node limit of 0 means no limit
+     */
+    public Engine(int maxDepth, long nodeLimit) {
+        this(maxDepth, nodeLimit, new TranspositionTable(DEFAULT_TABLE_BITS));
+    }
+
+    /*
+    Creates an engine that uses the given transposition table, which is kept between searches
+     */
+    public Engine(int maxDepth, long nodeLimit, TranspositionTable table) {
+        this.maxDepth = maxDepth;
+        this.nodeLimit = nodeLimit;
+        this.table = table;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public long getMoveTime() {
+        return moveTime;
+    }
+
+    /*
+    Gives every search a fixed time in milliseconds instead of a fixed depth, 0 to search by depth again
+    The move from the last iteration that finished in time is returned
+     */
+    public void setMoveTime(long moveTime) {
+        this.moveTime = moveTime;
+    }
+
+    /*
+    Searches by a game clock: the time left for all of this player's moves and the time added after each move,
+    in milliseconds. The caller updates the clock before each search, a remaining time of 0 turns the clock off
+    A time per move set with setMoveTime takes priority over the clock
+     */
+    public void setClock(long remaining, long increment) {
+        this.clockRemaining = remaining;
+        this.clockIncrement = increment;
+    }
+
+    public long getClockRemaining() {
+        return clockRemaining;
+    }
+
+    public long getClockIncrement() {
+        return clockIncrement;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    //Sets the endgame tablebase probed during the search, null to search every position
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return openingBook;
+    }
+
+    //Sets the opening book consulted before searching, null to always search
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /*
+    Sets how many threads search at once, the calling thread plus threads - 1 helpers
+     */
+    public synchronized void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An engine needs at least one thread");
+        }
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+        this.threads = threads;
+    }
+
+    /*
+    Searches the board for the current player and returns the best move, its score and the principal variation
+    The board is changed with doMove/undoMove during the search and is left as it was found
+    If the node limit runs out during an iteration, the result of the last completed iteration is returned
+     */
+    @Override
+    public SearchResult search(Board board) {
+        return search(board, getGeneration());
+    }
+
+    /*
+    Same as search, for a search requested when getGeneration returned the given generation
+    If stop has been called since then the search returns straight away, so a search queued on another thread
+    can be cancelled before it has even started. A cancelled search returns a result of depth 0
+     */
+    public SearchResult search(Board board, long generation) {
+        ArrayList<Move> rootMoves = board.getLegalMoves(board.getCurrentPlayer());
+        if (rootMoves.isEmpty()) {
+            return new SearchResult(null, -Search.WIN, 0, 0, new ArrayList<Move>());
+        }
+        if (openingBook != null) {
+            Move bookMove = openingBook.probe(board, bookRandom);
+            if (bookMove != null && rootMoves.contains(bookMove)) {
+                ArrayList<Move> pv = new ArrayList<>();
+                pv.add(bookMove);
+                return new SearchResult(bookMove, 0, 0, 0, pv);
+            }
+        }
+        if (tablebase != null && Integer.bitCount(board.getWhiteBits() | board.getBlackBits()) <= tablebase.getMaxPieces()) {
+            //Every move leads to a position in the tablebase, so one ply of search finds the perfect move
+            Search search = new Search(board, table, 0, tablebase);
+            int score = search.searchRoot(rootMoves, 1);
+            ArrayList<Move> pv = search.getPrincipalVariation();
+            return new SearchResult(pv.get(0), score, 1, search.getNodes(), pv);
+        }
+        if (moveTime > 0 || clockRemaining > 0) {
+            TimeManager time = moveTime > 0 ? TimeManager.forMoveTime(moveTime)
+                    : TimeManager.forClock(clockRemaining, clockIncrement, Integer.bitCount(board.getWhiteBits() | board.getBlackBits()));
+            return run(board, rootMoves, generation, Search.MAX_PLY - 1, nodeLimit, time);
+        }
+        return run(board, rootMoves, generation, maxDepth, nodeLimit, null);
+    }
+
+    /*
+    Searches a position of a larger variant for the current player with the same alpha-beta search, on the calling thread
+    It stops at the engine's depth or node limit, or at the time per move if one is set; the game clock, helper threads,
+    opening book and tablebase are for the 8x8 game and are not used
+    The best move and line come back as the board's packed moves in getPackedVariation (see VariantBoard.moveText)
+     */
+    public SearchResult search(VariantBoard board) {
+        return search(board, getGeneration());
+    }
+
+    //Same as search(VariantBoard), for a search requested when getGeneration returned the given generation
+    public SearchResult search(VariantBoard board, long generation) {
+        int[] rootMoves = new int[board.getMaxMoves()];
+        int count = board.generateMoves(board.getCurrentPlayer(), rootMoves);
+        if (count == 0) {
+            return new SearchResult(null, -Search.WIN, 0, 0, new ArrayList<Move>());
+        }
+        Search search = new Search(board, table, nodeLimit);
+        int lastDepth = maxDepth;
+        if (moveTime > 0) {
+            search.setDeadline(System.nanoTime() + moveTime * 1000000L);
+            lastDepth = Search.MAX_PLY - 1;
+        }
+        SearchResult result = new SearchResult(null, 0, 0, 0, new ArrayList<Move>());
+        result.setPackedVariation(new int[]{rootMoves[0]});
+        result.setUnfinished(true);
+        if (!register(search, generation)) {
+            return result;
+        }
+        try {
+            for (int depth = 1; depth <= lastDepth; depth++) {
+                int score = search.searchRoot(rootMoves, count, depth);
+                if (search.isAborted()) {
+                    break;
+                }
+                int[] pv = search.getPackedPrincipalVariation();
+                result = new SearchResult(null, score, depth, search.getNodes(), new ArrayList<Move>());
+                result.setCutoffs(search.getCutoffs(), search.getFirstMoveCutoffs());
+                result.setPackedVariation(pv);
+
+                //The best move is searched first in the next iteration
+                int best = 0;
+                while (rootMoves[best] != pv[0]) {
+                    best++;
+                }
+                System.arraycopy(rootMoves, 0, rootMoves, 1, best);
+                rootMoves[0] = pv[0];
+                if (Math.abs(score) >= Search.MATE_SCORE) {
+                    break;
+                }
+            }
+        } finally {
+            unregister(search);
+        }
+        return result;
+    }
+
+    /*
+    Searches the board with no depth or node limit until stop is called, to fill the transposition table
+    Used to think on the position expected after the opponent's reply while the opponent is thinking,
+    so the search that follows their move finds much of its tree already searched
+     */
+    public SearchResult ponder(Board board, long generation) {
+        ArrayList<Move> rootMoves = board.getLegalMoves(board.getCurrentPlayer());
+        if (rootMoves.isEmpty()) {
+            return new SearchResult(null, -Search.WIN, 0, 0, new ArrayList<Move>());
+        }
+        return run(board, rootMoves, generation, Search.MAX_PLY - 1, 0, null);
+    }
+
+    //Clears the transposition table, so nothing from an earlier game carries over
+    @Override
+    public void newGame() {
+        table.clear();
+    }
+
+    //Returns the current generation, to pass to a search that will run on another thread
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /*
+    Stops every search that is running and any search requested with an earlier generation
+    A stopped search returns the result of its last completed iteration
+     */
+    @Override
+    public synchronized void stop() {
+        generation++;
+        for (Search search : running) {
+            search.stop();
+        }
+    }
+
+    /*
+    Runs iterative deepening to lastDepth, on the calling thread and threads - 1 helpers
+    If time is not null it decides when to stop, and the main search is aborted at its deadline
+     */
+    private SearchResult run(Board board, ArrayList<Move> rootMoves, long generation, int lastDepth, long nodes, TimeManager time) {
+        Search main = takeSearch(board, nodes);
+        if (time != null) {
+            main.setDeadline(time.getDeadline());
+        }
+        if (!register(main, generation)) {
+            releaseSearch(main);
+            return unfinished(rootMoves);
+        }
+        try {
+            if (threads == 1) {
+                return iterate(main, rootMoves, 1, lastDepth, time);
+            }
+            return runParallel(board, rootMoves, generation, lastDepth, main, time);
+        } finally {
+            unregister(main);
+            releaseSearch(main);
+        }
+    }
+
+    //Returns the spare search set up for the board, or a new one if another run on this engine is using it
+    private synchronized Search takeSearch(Board board, long nodes) {
+        Search search = spareSearch;
+        if (search == null) {
+            return new Search(board, table, nodes, tablebase);
+        }
+        spareSearch = null;
+        search.reset(board, nodes, tablebase);
+        return search;
+    }
+
+    private synchronized void releaseSearch(Search search) {
+        spareSearch = search;
+    }
+
+    private SearchResult runParallel(Board board, ArrayList<Move> rootMoves, long generation, int lastDepth, Search main, TimeManager time) {
+
+        /*
+        Each helper starts on a copy of the board with the root moves in a different order, and every other helper
+        starts one ply deeper, so the helpers spread out over the tree instead of all searching the same moves
+         */
+        ArrayList<Search> helpers = new ArrayList<>();
+        ArrayList<Future<SearchResult>> futures = new ArrayList<>();
+        ExecutorService pool = getHelperPool();
+        for (int i = 1; i < threads; i++) {
+            final Search helper = new Search(board.cloneBoard(), table, 0, tablebase);
+            final ArrayList<Move> helperMoves = new ArrayList<>(rootMoves);
+            final int startDepth = 1 + i % 2;
+            Collections.rotate(helperMoves, -i);
+            if (!register(helper, generation)) {
+                helper.stop(); //Stopped while the helpers were being set up
+            }
+            helpers.add(helper);
+            futures.add(pool.submit(() -> iterate(helper, helperMoves, startDepth, lastDepth, null)));
+        }
+        SearchResult result = iterate(main, rootMoves, 1, lastDepth, time);
+
+        long nodes = result.getNodes();
+        for (Search helper : helpers) {
+            helper.stop();
+            unregister(helper);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Helper search failed", e.getCause());
+            }
+            nodes += helpers.get(i).getNodes();
+        }
+        SearchResult combined = new SearchResult(result.getBestMove(), result.getScore(), result.getDepth(), nodes, result.getPrincipalVariation());
+        combined.setCutoffs(result.getCutoffs(), result.getFirstMoveCutoffs());
+        combined.setUnfinished(result.isUnfinished());
+        return combined;
+    }
+
+    //Adds a search to the ones stop reaches, unless stop has been called since the given generation
+    private synchronized boolean register(Search search, long generation) {
+        if (generation != this.generation) {
+            return false;
+        }
+        running.add(search);
+        return true;
+    }
+
+    private synchronized void unregister(Search search) {
+        running.remove(search);
+    }
+
+    /*
+    Runs iterative deepening with one Search from startDepth up to lastDepth, or until time says to stop
+    Returns the result of the deepest iteration that finished before the search was stopped or ran out of nodes
+     */
+    private SearchResult iterate(Search search, ArrayList<Move> rootMoves, int startDepth, int lastDepth, TimeManager time) {
+        SearchResult result = unfinished(rootMoves);
+        for (int depth = startDepth; depth <= lastDepth; depth++) {
+            int score = search.searchRoot(rootMoves, depth);
+            if (search.isAborted()) {
+                break;
+            }
+            ArrayList<Move> pv = search.getPrincipalVariation();
+            result = new SearchResult(pv.get(0), score, depth, search.getNodes(), pv);
+            result.setCutoffs(search.getCutoffs(), search.getFirstMoveCutoffs());
+
+            //The best move is searched first in the next iteration
+            rootMoves.remove(pv.get(0));
+            rootMoves.add(0, pv.get(0));
+            if (Math.abs(score) >= Search.MATE_SCORE) {
+                break; //A forced win or loss has been found, deeper searches cannot change it
+            }
+            if (time != null && !time.startNextIteration(pv.get(0), score)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    //The result of a search stopped before its first iteration finished, which can only suggest the first legal move
+    private static SearchResult unfinished(ArrayList<Move> rootMoves) {
+        SearchResult result = new SearchResult(rootMoves.get(0), 0, 0, 0, new ArrayList<Move>());
+        result.setUnfinished(true);
+        return result;
+    }
+
+    //Helper threads are daemons so that an engine left running never keeps the application open
+    private synchronized ExecutorService getHelperPool() {
+        if (helperPool == null) {
+            helperPool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "engine-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return helperPool;
+    }
+}
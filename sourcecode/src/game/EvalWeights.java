@@ -0,0 +1,147 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/*
+The weights of the evaluation in Board.getMoveScore and Board.evaluate:
+    man          - each man
+    advancedMan  - extra for each man in the opponent's half of the board
+    king         - each king
+    captureBonus - after a capture, for each further capture the same player then has
+    threatPenalty - after any other move, for each capture it leaves the opponent
+    crownBonus   - for a move that crowns a man
+A weights file has one "name value" line per weight, lines starting with # are comments and missing weights keep
+their default. Tuner writes these files, and the file named by -Dcheckers.weights is loaded when the game starts
+ */
+public final class EvalWeights {
+
+    public static final int MAN = 0;
+    public static final int ADVANCED_MAN = 1;
+    public static final int KING = 2;
+    public static final int CAPTURE_BONUS = 3;
+    public static final int THREAT_PENALTY = 4;
+    public static final int CROWN_BONUS = 5;
+    public static final int COUNT = 6;
+    static final String[] NAMES = {"man", "advancedMan", "king", "captureBonus", "threatPenalty", "crownBonus"};
+    private static final int[] DEFAULTS = {10, 5, 20, 20, 30, 20};
+
+    final int man;
+    final int advancedMan;
+    final int king;
+    final int captureBonus;
+    final int threatPenalty;
+    final int crownBonus;
+    /*
+    What each piece adds to Board.evaluate for white on each square, indexed by piece * 32 + square
+    with pieces numbered as in Board (1 white man, 2 black man, 3 white king, 4 black king)
+    Black pieces count against white, so their values are negative
+     */
+    final int[] squareScores = new int[5 * 32];
+
+    public EvalWeights(int[] values) {
+        if (values.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights, got " + values.length);
+        }
+        man = values[MAN];
+        advancedMan = values[ADVANCED_MAN];
+        king = values[KING];
+        captureBonus = values[CAPTURE_BONUS];
+        threatPenalty = values[THREAT_PENALTY];
+        crownBonus = values[CROWN_BONUS];
+        for (int sq = 0; sq < 32; sq++) {
+            squareScores[32 + sq] = man + (sq < 16 ? advancedMan : 0); //A white man is advanced on rows 0 - 3
+            squareScores[2 * 32 + sq] = -(man + (sq >= 16 ? advancedMan : 0)); //A black man on rows 4 - 7
+            squareScores[3 * 32 + sq] = king;
+            squareScores[4 * 32 + sq] = -king;
+        }
+    }
+
+    //The hand-picked weights the game has always used
+    public static EvalWeights defaults() {
+        return new EvalWeights(DEFAULTS.clone());
+    }
+
+    /*
+    Returns the weights from the file named by the checkers.weights system property, or the defaults if it is not set
+    A file that cannot be read is reported and the defaults are used, so a bad file never stops the game starting
+     */
+    static EvalWeights fromSystemProperty() {
+        String file = System.getProperty("checkers.weights");
+        if (file == null) {
+            return defaults();
+        }
+        try {
+            return load(new File(file));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.log(Log.ERROR, "Could not load evaluation weights from " + file + ": " + e.getMessage());
+            return defaults();
+        }
+    }
+
+    public static EvalWeights load(File file) throws IOException {
+        int[] values = DEFAULTS.clone();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int index = indexOf(parts[0]);
+                if (parts.length != 2 || index < 0) {
+                    throw new IllegalArgumentException("Bad weights line: " + line);
+                }
+                try {
+                    values[index] = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad weights line: " + line);
+                }
+            }
+        }
+        return new EvalWeights(values);
+    }
+
+    public void write(File file, String comment) throws IOException {
+        try (PrintWriter out = new PrintWriter(file)) {
+            if (comment != null) {
+                out.println("# " + comment);
+            }
+            int[] values = toArray();
+            for (int i = 0; i < COUNT; i++) {
+                out.println(NAMES[i] + " " + values[i]);
+            }
+        }
+    }
+
+    public int get(int weight) {
+        return toArray()[weight];
+    }
+
+    public int[] toArray() {
+        return new int[]{man, advancedMan, king, captureBonus, threatPenalty, crownBonus};
+    }
+
+    private static int indexOf(String name) {
+        for (int i = 0; i < COUNT; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        int[] values = toArray();
+        for (int i = 0; i < COUNT; i++) {
+            text.append(i > 0 ? " " : "").append(NAMES[i]).append('=').append(values[i]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,178 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/*
+A compact binary store of games, written by GameArchiveWriter and read here by index without parsing the rest
+An archive is two files, the games themselves and <file>.idx holding the 8 byte offset of each game
+Each game is stored as:
+    flags     - 1 byte: bits 0 - 1 the player to move first, bits 2 - 3 the result
+                (0 unknown, 1 white won, 2 black won, 3 draw), bit 4 set if the game has its own start position,
+                bit 5 set if the opponent ever moves straight after a capture, as in games read from standard PDN
+    position  - only with bit 4: the white, black and king bitboards as 4 byte little endian ints
+    plies     - the number of single moves as a varint, captures being one ply per piece taken
+    moves     - each ply as its position in the generateMoves order of that position,
+                using just enough bits for the number of legal moves there and packed from the lowest bit up
+                With bit 5, the moves after a capture are the player's own followed by the opponent's
+An opening move takes 3 bits and a position with a single legal move none at all, so most games fit in a few dozen bytes
+Both files are memory-mapped in 1 GB segments so archives larger than 2 GB can be read
+ */
+public class GameArchive {
+
+    static final int CUSTOM_START = 1 << 4;
+    static final int TURN_ENDS = 1 << 5;
+    private static final int SEGMENT_BITS = 30;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final MappedByteBuffer[] indexSegments;
+    private final long size;
+    private final int[] buffer = new int[2 * Board.MAX_MOVES];
+
+    private GameArchive(MappedByteBuffer[] segments, MappedByteBuffer[] indexSegments, long size) {
+        this.segments = segments;
+        this.indexSegments = indexSegments;
+        this.size = size;
+    }
+
+    //Maps an archive for reading, games appended afterwards are not seen until it is opened again
+    public static GameArchive open(File file) throws IOException {
+        File index = indexFile(file);
+        return new GameArchive(map(file), map(index), index.length() / 8);
+    }
+
+    //Returns the number of games in the archive
+    public long size() {
+        return size;
+    }
+
+    /*
+    Reads the game at the given index, from 0
+    Captures come back as single moves, one per piece taken. The archive is not safe to read from several threads at once
+     */
+    public GameRecord read(long game) {
+        if (game < 0 || game >= size) {
+            throw new IllegalArgumentException("No game " + game + " in an archive of " + size);
+        }
+        long position = 0;
+        for (int i = 0; i < 8; i++) {
+            position = position << 8 | (byteAt(indexSegments, game * 8 + i) & 0xFF);
+        }
+        int flags = byteAt(segments, position++) & 0xFF;
+        int player = flags & 3;
+        Board board = new Board(player);
+        if ((flags & CUSTOM_START) != 0) {
+            int[] bits = new int[3];
+            for (int i = 0; i < 3; i++) {
+                for (int b = 0; b < 4; b++) {
+                    bits[i] |= (byteAt(segments, position++) & 0xFF) << (b * 8);
+                }
+            }
+            board.restorePosition(bits[0], bits[1], bits[2], player, 1);
+        }
+        String startFen = board.toFen();
+
+        int plies = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = byteAt(segments, position++);
+            plies |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        ArrayList<Move> moves = new ArrayList<>(plies);
+        long bits = 0;
+        int available = 0;
+        boolean afterCapture = false;
+        for (int ply = 0; ply < plies; ply++) {
+            int count = moveList(board, afterCapture && (flags & TURN_ENDS) != 0, buffer);
+            int width = ordinalBits(count);
+            while (available < width) {
+                bits |= (long) (byteAt(segments, position++) & 0xFF) << available;
+                available += 8;
+            }
+            int ordinal = (int) (bits & ((1L << width) - 1));
+            bits >>>= width;
+            available -= width;
+            if (ordinal >= count) {
+                throw new IllegalStateException("Corrupt game " + game + " in archive");
+            }
+            moves.add(Move.of(buffer[ordinal]));
+            board.doMove(buffer[ordinal]);
+            afterCapture = Move.isCapture(buffer[ordinal]);
+        }
+        return new GameRecord(startFen, moves, result(flags >>> 2 & 3));
+    }
+
+    /*
+    Writes the moves a ply is numbered among into the buffer, which needs room for 2 * Board.MAX_MOVES,
+    and returns how many there are: the current player's moves, then the opponent's if the turn can end here
+     */
+    static int moveList(Board board, boolean turnCanEnd, int[] buffer) {
+        int player = board.getCurrentPlayer();
+        int count = board.generateMoves(player, buffer);
+        if (turnCanEnd) {
+            int[] opponentMoves = new int[Board.MAX_MOVES];
+            int opponentCount = board.generateMoves(player == 1 ? 2 : 1, opponentMoves);
+            System.arraycopy(opponentMoves, 0, buffer, count, opponentCount);
+            count += opponentCount;
+        }
+        return count;
+    }
+
+    //Returns the bits used for the position of a move among count legal moves
+    static int ordinalBits(int count) {
+        return count <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+    }
+
+    static int resultCode(int result) {
+        switch (result) {
+            case GameRecord.WHITE_WINS:
+                return 1;
+            case GameRecord.BLACK_WINS:
+                return 2;
+            case GameRecord.DRAW:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    private static int result(int code) {
+        switch (code) {
+            case 1:
+                return GameRecord.WHITE_WINS;
+            case 2:
+                return GameRecord.BLACK_WINS;
+            case 3:
+                return GameRecord.DRAW;
+            default:
+                return GameRecord.UNKNOWN;
+        }
+    }
+
+    static File indexFile(File file) {
+        return new File(file.getPath() + ".idx");
+    }
+
+    private static byte byteAt(MappedByteBuffer[] segments, long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    private static MappedByteBuffer[] map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, 1L << SEGMENT_BITS));
+            }
+            return segments;
+        }
+    }
+}
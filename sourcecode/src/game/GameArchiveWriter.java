@@ -0,0 +1,128 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/*
+Appends games to a GameArchive, creating the files if they do not exist yet
+Tags are not stored, only the start position, the moves and the result (see GameArchive for the format)
+ */
+public class GameArchiveWriter implements Closeable {
+
+    private final DataOutputStream data;
+    private final DataOutputStream index;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final int[] buffer = new int[2 * Board.MAX_MOVES];
+    private long offset;
+
+    public GameArchiveWriter(File file) throws IOException {
+        offset = file.length();
+        data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+        index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(GameArchive.indexFile(file), true), 1 << 16));
+    }
+
+    /*
+    Adds a game to the end of the archive
+    Throws IllegalArgumentException if a move is not legal, nothing is written in that case
+     */
+    public void append(GameRecord game) throws IOException {
+        Board board = game.getStartBoard();
+        record.reset();
+        int flags = board.getCurrentPlayer() | GameArchive.resultCode(game.getResult()) << 2;
+        if (!game.isStandardStart()) {
+            flags |= GameArchive.CUSTOM_START;
+        }
+        Move previous = null;
+        for (Move move : game.getMoves()) {
+            if (previous != null && previous.isCapture() && move.getPlayer() != previous.getPlayer()) {
+                flags |= GameArchive.TURN_ENDS;
+            }
+            previous = move;
+        }
+        boolean turnEnds = (flags & GameArchive.TURN_ENDS) != 0;
+        record.write(flags);
+        if (!game.isStandardStart()) {
+            writeInt(board.getWhiteBits());
+            writeInt(board.getBlackBits());
+            writeInt(board.getKingBits());
+        }
+        int plies = 0;
+        for (Move move : game.getMoves()) {
+            plies += move.getHops();
+        }
+        writeVarint(plies);
+
+        long bits = 0;
+        int used = 0;
+        boolean afterCapture = false;
+        for (Move move : game.getMoves()) {
+            for (int hop = 0; hop < move.getHops(); hop++) {
+                int packed = Move.encode(move.getPlayer(), move.pathSquare(hop), move.pathSquare(hop + 1), move.isCapture());
+                int count = GameArchive.moveList(board, afterCapture && turnEnds, buffer);
+                int ordinal = 0;
+                while (ordinal < count && buffer[ordinal] != packed) {
+                    ordinal++;
+                }
+                if (ordinal == count) {
+                    throw new IllegalArgumentException("Illegal move " + move + " in game to archive");
+                }
+                bits |= (long) ordinal << used;
+                used += GameArchive.ordinalBits(count);
+                while (used >= 8) {
+                    record.write((int) bits);
+                    bits >>>= 8;
+                    used -= 8;
+                }
+                board.doMove(packed);
+                afterCapture = move.isCapture();
+            }
+        }
+        if (used > 0) {
+            record.write((int) bits);
+        }
+        record.writeTo(data);
+        index.writeLong(offset);
+        offset += record.size();
+    }
+
+    //Adds every game in the list, in order
+    public void appendAll(ArrayList<GameRecord> games) throws IOException {
+        for (GameRecord game : games) {
+            append(game);
+        }
+    }
+
+    public void flush() throws IOException {
+        data.flush();
+        index.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private void writeInt(int value) {
+        for (int i = 0; i < 4; i++) {
+            record.write(value >>> (i * 8));
+        }
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            record.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        record.write(value);
+    }
+}
@@ -0,0 +1,152 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+The moves of a game in order, with undo, redo and jumping to any point of the game
+Moves are kept as packed ints and taken back with Board.unmakeMove, so undo and redo cost one move each
+and nothing is copied. Every CHECKPOINT_INTERVAL moves a compact copy of the position is saved, so that jumping
+a long way through the game replays at most CHECKPOINT_INTERVAL moves from the nearest checkpoint
+ */
+public class GameHistory {
+
+    private static final int CHECKPOINT_INTERVAL = 32;
+    private static final int CHECKPOINT_INTS = 5; //White, black and king bits, player to move and turn count
+
+    private final Board board;
+    private int[] moves = new int[64];
+    private int length; //Moves recorded, including undone moves that can still be redone
+    private int position; //Moves currently played on the board
+    private int[] checkpoints = new int[CHECKPOINT_INTS * 4];
+    private int checkpointCount;
+
+    //Starts the history of a game from a board no moves have been made on, the board is then played through the history
+    public GameHistory(Board board) {
+        this.board = board;
+        saveCheckpoint();
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    //Returns how many moves have been played to reach the board's position
+    public int getPosition() {
+        return position;
+    }
+
+    //Returns how many moves are recorded, including those that have been undone
+    public int getLength() {
+        return length;
+    }
+
+    //Returns the move played at the given index, from 0
+    public Move getMove(int index) {
+        return Move.of(moves[index]);
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < length;
+    }
+
+    /*
+    Plays a move on the board with Board.makeMove and records it, returning the game state makeMove returns
+    Any undone moves are thrown away, the game now continues from here
+    Moves are recorded packed, so a compound move has to be played as its single hops and is rejected before
+    anything changes
+     */
+    public int play(Move move) {
+        if (move.isCompound()) {
+            throw new IllegalArgumentException("Compound move " + move + " must be played one hop at a time");
+        }
+        int packed = move.encode();
+        length = position;
+        checkpointCount = Math.min(checkpointCount, position / CHECKPOINT_INTERVAL + 1);
+        int state = board.makeMove(move);
+        if (length == moves.length) {
+            moves = Arrays.copyOf(moves, length * 2);
+        }
+        moves[length++] = packed;
+        position = length;
+        if (position % CHECKPOINT_INTERVAL == 0) {
+            saveCheckpoint();
+        }
+        return state;
+    }
+
+    //Takes back the last move played
+    public void undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("No move to undo");
+        }
+        if (board.getUndoSize() > 0) {
+            board.unmakeMove();
+            position--;
+        } else {
+            jumpTo(position - 1); //The board was rebuilt from a checkpoint and has nothing left to take back
+        }
+    }
+
+    //Plays the next undone move again, returning the game state from Board.makeMove
+    public int redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("No move to redo");
+        }
+        int state = board.makeMove(Move.of(moves[position]));
+        position++;
+        if (position % CHECKPOINT_INTERVAL == 0 && position / CHECKPOINT_INTERVAL == checkpointCount) {
+            saveCheckpoint();
+        }
+        return state;
+    }
+
+    /*
+    Moves the board to the position after the given number of moves, anywhere from 0 to getLength()
+    Short distances are stepped with undo and redo, longer ones start from the nearest checkpoint at or before it
+     */
+    public void jumpTo(int target) {
+        if (target < 0 || target > length) {
+            throw new IllegalArgumentException("Move " + target + " is outside the game");
+        }
+        if (target <= position && position - target <= board.getUndoSize()) {
+            while (position > target) {
+                board.unmakeMove();
+                position--;
+            }
+            return;
+        }
+        if (target < position || target - position > CHECKPOINT_INTERVAL) {
+            int checkpoint = target / CHECKPOINT_INTERVAL;
+            int offset = checkpoint * CHECKPOINT_INTS;
+            board.restorePosition(checkpoints[offset], checkpoints[offset + 1], checkpoints[offset + 2],
+                    checkpoints[offset + 3], checkpoints[offset + 4]);
+            position = checkpoint * CHECKPOINT_INTERVAL;
+            ArrayList<Move> moveSequence = board.getMoveSequence();
+            for (int i = 0; i < position; i++) {
+                moveSequence.add(Move.of(moves[i]));
+            }
+        }
+        while (position < target) {
+            redo();
+        }
+    }
+
+    //Saves the board's position as the checkpoint for the current number of moves, a multiple of CHECKPOINT_INTERVAL
+    private void saveCheckpoint() {
+        int offset = checkpointCount * CHECKPOINT_INTS;
+        if (offset == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, offset * 2);
+        }
+        checkpoints[offset] = board.getWhiteBits();
+        checkpoints[offset + 1] = board.getBlackBits();
+        checkpoints[offset + 2] = board.getKingBits();
+        checkpoints[offset + 3] = board.getCurrentPlayer();
+        checkpoints[offset + 4] = board.getTotalTurns();
+        checkpointCount++;
+    }
+}
@@ -0,0 +1,86 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/*
+One finished or unfinished game: the position it started from, the moves played and the result
+Read and written as PDN text by PdnReader and PdnWriter, and in a compact binary form by GameArchive
+ */
+public class GameRecord {
+
+    public static final int UNKNOWN = -1;
+    public static final int DRAW = 0;
+    public static final int WHITE_WINS = 1;
+    public static final int BLACK_WINS = 2;
+    static final String START_FEN = new Board(1).toFen().substring(1); //The start position without the player to move
+
+    private final LinkedHashMap<String, String> tags = new LinkedHashMap<>();
+    private final String startFen;
+    private final ArrayList<Move> moves;
+    private int result;
+
+    /*
+    Creates a record of the moves played from the position given in FEN form (see Board.fromFen)
+    The result is UNKNOWN, DRAW, WHITE_WINS or BLACK_WINS
+     */
+    public GameRecord(String startFen, ArrayList<Move> moves, int result) {
+        this.startFen = startFen;
+        this.moves = moves;
+        this.result = result;
+    }
+
+    //Creates a record of a game played from the start position, with the given player moving first
+    public GameRecord(int startingPlayer, ArrayList<Move> moves, int result) {
+        this((startingPlayer == 1 ? "W" : "B") + START_FEN, moves, result);
+    }
+
+    public String getStartFen() {
+        return startFen;
+    }
+
+    public ArrayList<Move> getMoves() {
+        return moves;
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    public void setResult(int result) {
+        this.result = result;
+    }
+
+    //Returns the PDN tag with the given name, such as "Event" or "White", or null if the game does not have it
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    //Sets a PDN tag, FEN and Result are worked out from the record itself and are not kept as tags
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    LinkedHashMap<String, String> getTags() {
+        return tags;
+    }
+
+    //Returns whether the game starts from the normal start position
+    public boolean isStandardStart() {
+        return startFen.substring(1).equals(START_FEN);
+    }
+
+    //Returns a board set up at the start of the game
+    public Board getStartBoard() {
+        return Board.fromFen(startFen);
+    }
+
+    //Returns a board with every move of the game played on it
+    public Board replay() {
+        Board board = getStartBoard();
+        for (Move move : moves) {
+            board.makeMove(move);
+        }
+        return board;
+    }
+}
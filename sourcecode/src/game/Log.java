@@ -0,0 +1,80 @@
+package game;
+
+/*
+Level-gated logging for the engine and the UI, in place of writing to System.out directly
+Messages at or below the current level are passed to the sink, by default a console writer on a background thread
+Callers building a message should check isEnabled first, so a disabled level costs one comparison and no strings:
+    if (Log.isEnabled(Log.DEBUG)) {
+        Log.log(Log.DEBUG, "Searched " + result);
+    }
+The starting level can be set with -Dcheckers.log=off, error, info or debug, and defaults to info
+ */
+public final class Log {
+
+    public static final int OFF = 0;
+    public static final int ERROR = 1;
+    public static final int INFO = 2;
+    public static final int DEBUG = 3;
+    private static final int BUFFER_SIZE = 4096;
+
+    private static volatile int level = parseLevel(System.getProperty("checkers.log", "info"));
+    private static volatile LogSink sink;
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(int messageLevel) {
+        return messageLevel <= level;
+    }
+
+    public static void log(int messageLevel, String message) {
+        if (messageLevel <= level) {
+            getSink().write(messageLevel, message);
+        }
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    public static void setLevel(int level) {
+        Log.level = level;
+    }
+
+    //Replaces where messages are written, for example to collect them in a headless run
+    public static void setSink(LogSink sink) {
+        Log.sink = sink;
+    }
+
+    /*
+    The console writer is only started once something is logged,
+    and buffered messages are written out when the program exits
+     */
+    private static LogSink getSink() {
+        LogSink current = sink;
+        if (current == null) {
+            synchronized (Log.class) {
+                if (sink == null) {
+                    final AsyncLogSink console = new AsyncLogSink((messageLevel, message) -> System.out.println(message), BUFFER_SIZE);
+                    Runtime.getRuntime().addShutdownHook(new Thread(console::close));
+                    sink = console;
+                }
+                current = sink;
+            }
+        }
+        return current;
+    }
+
+    private static int parseLevel(String name) {
+        switch (name.toLowerCase()) {
+            case "off":
+                return OFF;
+            case "error":
+                return ERROR;
+            case "debug":
+                return DEBUG;
+            default:
+                return INFO;
+        }
+    }
+}
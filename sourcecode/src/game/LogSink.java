@@ -0,0 +1,9 @@
+package game;
+
+/*
+Destination for the messages passed to Log, see Log.setSink
+ */
+public interface LogSink {
+
+    void write(int level, String message);
+}
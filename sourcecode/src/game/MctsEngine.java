@@ -0,0 +1,458 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Monte Carlo tree search, an alternative to the alpha-beta search of Engine
+Each playout walks down the tree from the root picking the child with the best UCT value
+    wins / visits + exploration * sqrt(ln(parent visits) / visits)
+adds the children of the node it stops at, scores the position below it and adds the result to every node on the way
+The result comes from a rollout, moves played to the end of the game or ROLLOUT_PLIES, or straight from Board.evaluate:
+    ROLLOUT_NONE      - no rollout, the position is scored with evaluate
+    ROLLOUT_RANDOM    - random moves
+    ROLLOUT_HEURISTIC - mostly the move with the best getMoveScore, a random move one time in ROLLOUT_RANDOM_ONE_IN
+A rollout cut short is scored with evaluate too, turned into a result between 0 and 1 by 1 / (1 + e^(-score / SCORE_SCALE))
+Children are created in order of getMoveScore, so unvisited children are tried best first
+The search stops after a number of playouts, after a time in milliseconds, or when stop is called, whichever is first
+The move played is the root child with the most visits
+
+The tree is shared by every thread and held in primitive arrays, node 0 being the root, rather than one object per node:
+    moves       - the packed move (see Move.encode) leading to each node
+    firstChild  - where each node's children start, they are allocated together
+    children    - how many children each node has, or UNEXPANDED, EXPANDING or TERMINAL
+    visits      - playouts through each node
+    results     - the sum of those playouts' results for the player who made the node's move, RESULT_SCALE for a win
+children, visits and results are atomic arrays, so the threads never lock: one thread claims a node to expand by
+changing it from UNEXPANDED to EXPANDING, and fills in its children before publishing the count. A thread going down the
+tree adds its visit to each node at once and the result only at the end, which counts a playout still running as a
+loss (virtual loss) and steers the other threads to different parts of the tree
+When the arrays are full the tree stops growing and the playouts carry on from its leaves
+ */
+public class MctsEngine implements SearchEngine {
+
+    public static final int ROLLOUT_NONE = 0;
+    public static final int ROLLOUT_RANDOM = 1;
+    public static final int ROLLOUT_HEURISTIC = 2;
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = -1;
+    private static final int TERMINAL = -2; //The player to move has lost, or has just taken the opponent's last piece
+    private static final int RESULT_SCALE = 1000;
+    private static final double SCORE_SCALE = 150; //Evaluation units per unit of the logistic function's input
+    private static final int ROLLOUT_PLIES = 40;
+    private static final int ROLLOUT_RANDOM_ONE_IN = 10;
+    private static final int TIME_CHECK_PLAYOUTS = 64; //How often a worker reads the clock, a power of 2
+    private static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final int capacity;
+    private final int[] moves;
+    private final int[] firstChild;
+    private final AtomicIntegerArray children;
+    private final AtomicIntegerArray visits;
+    private final AtomicLongArray results;
+    private final AtomicInteger nextNode = new AtomicInteger();
+    private final AtomicInteger playoutsStarted = new AtomicInteger();
+
+    private long playouts;
+    private long moveTime;
+    private int threads = 1;
+    private int rollout = ROLLOUT_HEURISTIC;
+    private double exploration = 1.0;
+    private long seed = 1;
+    private ExecutorService helperPool;
+    private volatile boolean stopped;
+    private volatile long deadline;
+    private int rootPlayer;
+
+    //Creates an engine that runs the given number of playouts per search, with room for DEFAULT_CAPACITY nodes
+    public MctsEngine(long playouts) {
+        this(playouts, DEFAULT_CAPACITY);
+    }
+
+    /*
+    Creates an engine that runs the given number of playouts per search (0 for no limit) in a tree of at most
+    capacity nodes. Each node takes 24 bytes
+     */
+    public MctsEngine(long playouts, int capacity) {
+        if (capacity < 1 + Board.MAX_MOVES) {
+            throw new IllegalArgumentException("The tree needs room for at least " + (1 + Board.MAX_MOVES) + " nodes");
+        }
+        this.playouts = playouts;
+        this.capacity = capacity;
+        moves = new int[capacity];
+        firstChild = new int[capacity];
+        children = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        results = new AtomicLongArray(capacity);
+    }
+
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    public void setPlayouts(long playouts) {
+        this.playouts = playouts;
+    }
+
+    public long getMoveTime() {
+        return moveTime;
+    }
+
+    //Limits every search to a time in milliseconds as well as the playouts, 0 for no time limit
+    public void setMoveTime(long moveTime) {
+        this.moveTime = moveTime;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    //Sets how many threads run playouts at once, the calling thread plus threads - 1 helpers
+    public synchronized void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An engine needs at least one thread");
+        }
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+        this.threads = threads;
+    }
+
+    public int getRollout() {
+        return rollout;
+    }
+
+    //Sets how positions below the tree are scored, one of the ROLLOUT_ constants
+    public void setRollout(int rollout) {
+        if (rollout < ROLLOUT_NONE || rollout > ROLLOUT_HEURISTIC) {
+            throw new IllegalArgumentException("Unknown rollout " + rollout);
+        }
+        this.rollout = rollout;
+    }
+
+    public double getExploration() {
+        return exploration;
+    }
+
+    //Sets the exploration constant of UCT, larger values spread the playouts over more moves
+    public void setExploration(double exploration) {
+        this.exploration = exploration;
+    }
+
+    //Sets the seed of the random moves in rollouts, each search uses the same seeds so a search can be repeated
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    //Stops the search that is running, which returns the move with the most visits so far
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    //Nothing is kept between searches, each one builds a new tree
+    @Override
+    public void newGame() {
+    }
+
+    /*
+    Searches the board for the current player and returns the root child with the most visits
+    The score is the child's share of wins turned back into evaluation units, the depth is how deep the tree grew,
+    the node count is the number of playouts and the principal variation follows the most visited children
+    The board is changed during the search and is left as it was found, threads other than the caller use copies
+     */
+    @Override
+    public SearchResult search(Board board) {
+        ArrayList<Move> rootMoves = board.getLegalMoves(board.getCurrentPlayer());
+        if (rootMoves.isEmpty()) {
+            return new SearchResult(null, -Search.WIN, 0, 0, new ArrayList<Move>());
+        }
+        stopped = false;
+        deadline = moveTime > 0 ? System.nanoTime() + moveTime * 1000000 : 0;
+        rootPlayer = board.getCurrentPlayer();
+        moves[0] = 0;
+        children.set(0, UNEXPANDED);
+        visits.set(0, 0);
+        results.set(0, 0);
+        nextNode.set(1);
+        playoutsStarted.set(0);
+
+        int maxDepth;
+        if (threads == 1) {
+            maxDepth = runPlayouts(board, new Random(seed));
+        } else {
+            maxDepth = runParallel(board);
+        }
+
+        int count = children.get(0);
+        if (count <= 0) {
+            SearchResult result = new SearchResult(rootMoves.get(0), 0, 0, visits.get(0), new ArrayList<Move>());
+            result.setUnfinished(true); //Stopped before the root was expanded
+            return result;
+        }
+        int best = mostVisited(0);
+        int bestVisits = visits.get(best);
+        double share = bestVisits == 0 ? 0.5 : (double) results.get(best) / RESULT_SCALE / bestVisits;
+        ArrayList<Move> pv = new ArrayList<>();
+        for (int node = best; node > 0 && visits.get(node) > 0; node = children.get(node) > 0 ? mostVisited(node) : 0) {
+            pv.add(Move.of(moves[node]));
+        }
+        return new SearchResult(pv.get(0), toScore(share), maxDepth, visits.get(0), pv);
+    }
+
+    //Runs playouts on the calling thread and threads - 1 helpers, each helper on its own copy of the board
+    private int runParallel(Board board) {
+        ExecutorService pool = getHelperPool();
+        ArrayList<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            final Board copy = board.cloneBoard();
+            final Random random = new Random(seed + i);
+            futures.add(pool.submit(() -> runPlayouts(copy, random)));
+        }
+        int maxDepth = runPlayouts(board, new Random(seed));
+        stopped = true; //Helpers that started late stop with the main thread
+        for (Future<Integer> future : futures) {
+            try {
+                maxDepth = Math.max(maxDepth, future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Helper playouts failed", e.getCause());
+            }
+        }
+        return maxDepth;
+    }
+
+    //Runs playouts until the budget, the deadline or stop, returning the deepest the tree was followed
+    private int runPlayouts(Board board, Random random) {
+        int[] path = new int[Search.MAX_PLY];
+        int[] buffer = new int[Board.MAX_MOVES];
+        int[] scores = new int[Board.MAX_MOVES];
+        int maxDepth = 0;
+        while (!stopped) {
+            int started = playoutsStarted.getAndIncrement();
+            if (playouts > 0 && started >= playouts) {
+                break;
+            }
+            if (deadline != 0 && (started & (TIME_CHECK_PLAYOUTS - 1)) == 0 && System.nanoTime() - deadline >= 0) {
+                stopped = true;
+                break;
+            }
+            maxDepth = Math.max(maxDepth, playout(board, random, path, buffer, scores));
+        }
+        return maxDepth;
+    }
+
+    /*
+    One playout: selection and expansion down the tree, then scoring the position and adding the result on the way back
+    Returns the number of moves made inside the tree
+     */
+    private int playout(Board board, Random random, int[] path, int[] buffer, int[] scores) {
+        int node = 0;
+        int depth = 0;
+        visits.incrementAndGet(0);
+        path[depth++] = 0;
+        int whiteResult = -1;
+        while (depth < path.length) {
+            int count = children.get(node);
+            if (count == TERMINAL) {
+                whiteResult = terminalResult(board);
+                break;
+            }
+            if (count == UNEXPANDED) {
+                if (children.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+                    count = expand(node, board, buffer, scores);
+                    if (count == TERMINAL) {
+                        whiteResult = terminalResult(board);
+                        break;
+                    }
+                    if (count == UNEXPANDED) {
+                        break; //The tree is full
+                    }
+                } else {
+                    break; //Another thread is expanding this node, score it as it is
+                }
+            } else if (count == EXPANDING) {
+                break;
+            }
+            node = select(node, count);
+            visits.incrementAndGet(node); //The virtual loss, the result is only added at the end
+            path[depth++] = node;
+            board.doMove(moves[node]);
+            if (visits.get(node) == 1) {
+                break; //A node seen for the first time is scored before it is expanded
+            }
+        }
+        if (whiteResult < 0) {
+            whiteResult = rollout(board, random, buffer, scores);
+        }
+        for (int i = depth - 1; i >= 1; i--) {
+            int mover = Move.getPlayer(moves[path[i]]);
+            results.addAndGet(path[i], mover == WHITE ? whiteResult : RESULT_SCALE - whiteResult);
+            board.undoMove();
+        }
+        results.addAndGet(0, rootPlayer == WHITE ? RESULT_SCALE - whiteResult : whiteResult);
+        return depth - 1;
+    }
+
+    /*
+    Adds the children of a node the calling thread has claimed, ordered by getMoveScore, and publishes them
+    Returns the number of children, TERMINAL for a finished game, or UNEXPANDED if the tree has no room left
+     */
+    private int expand(int node, Board board, int[] buffer, int[] scores) {
+        int player = board.getCurrentPlayer();
+        int count = isFinished(board) ? 0 : board.generateMoves(player, buffer);
+        if (count == 0) {
+            children.set(node, TERMINAL);
+            return TERMINAL;
+        }
+        if (nextNode.get() > capacity - count) {
+            children.set(node, UNEXPANDED);
+            return UNEXPANDED;
+        }
+        int first = nextNode.getAndAdd(count);
+        if (first > capacity - count) {
+            children.set(node, UNEXPANDED); //Another thread took the last of the room, the counter is left past the end
+            return UNEXPANDED;
+        }
+        for (int i = 0; i < count; i++) {
+            scores[i] = board.getMoveScore(Move.of(buffer[i]));
+        }
+        for (int i = 0; i < count; i++) {
+            int best = i;
+            for (int j = i + 1; j < count; j++) {
+                if (scores[j] > scores[best]) {
+                    best = j;
+                }
+            }
+            int child = first + i;
+            moves[child] = buffer[best];
+            children.set(child, UNEXPANDED);
+            visits.set(child, 0);
+            results.set(child, 0);
+            buffer[best] = buffer[i];
+            scores[best] = scores[i];
+        }
+        firstChild[node] = first;
+        children.set(node, count); //Publishes the children, every write above is seen by a thread that reads the count
+        return count;
+    }
+
+    //Returns the child with the best UCT value, the first unvisited child if there is one
+    private int select(int node, int count) {
+        int first = firstChild[node];
+        double logParent = Math.log(Math.max(1, visits.get(node)));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + count; child++) {
+            int childVisits = visits.get(child);
+            if (childVisits == 0) {
+                return child;
+            }
+            double value = (double) results.get(child) / RESULT_SCALE / childVisits + exploration * Math.sqrt(logParent / childVisits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private int mostVisited(int node) {
+        int first = firstChild[node];
+        int best = first;
+        for (int child = first + 1; child < first + children.get(node); child++) {
+            if (visits.get(child) > visits.get(best)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /*
+    Plays moves from the board's position according to the rollout setting and returns the result for white,
+    from 0 for a black win to RESULT_SCALE for a white win. The moves are taken back before returning
+     */
+    private int rollout(Board board, Random random, int[] buffer, int[] scores) {
+        int plies = 0;
+        int whiteResult = -1;
+        while (rollout != ROLLOUT_NONE && plies < ROLLOUT_PLIES) {
+            if (isFinished(board)) {
+                whiteResult = terminalResult(board);
+                break;
+            }
+            int player = board.getCurrentPlayer();
+            int count = board.generateMoves(player, buffer);
+            if (count == 0) {
+                whiteResult = terminalResult(board);
+                break;
+            }
+            int move = buffer[random.nextInt(count)];
+            if (rollout == ROLLOUT_HEURISTIC && random.nextInt(ROLLOUT_RANDOM_ONE_IN) != 0) {
+                int bestScore = Integer.MIN_VALUE;
+                for (int i = 0; i < count; i++) {
+                    int score = board.getMoveScore(Move.of(buffer[i]));
+                    if (score > bestScore) {
+                        bestScore = score;
+                        move = buffer[i];
+                    }
+                }
+            }
+            board.doMove(move);
+            plies++;
+        }
+        if (whiteResult < 0) {
+            if (isFinished(board)) {
+                whiteResult = terminalResult(board);
+            } else {
+                double white = 1 / (1 + Math.exp(-board.evaluate(WHITE) / SCORE_SCALE));
+                whiteResult = (int) Math.round(white * RESULT_SCALE);
+            }
+        }
+        for (int i = 0; i < plies; i++) {
+            board.undoMove();
+        }
+        return whiteResult;
+    }
+
+    //The game is over when a capture has taken the last piece of the player not to move, captures keep the turn
+    private static boolean isFinished(Board board) {
+        int player = board.getCurrentPlayer();
+        return board.getPieceCount(player == WHITE ? BLACK : WHITE) == 0;
+    }
+
+    //The result for white of a finished game: the player to move has won if the opponent has no pieces, else lost
+    private static int terminalResult(Board board) {
+        int player = board.getCurrentPlayer();
+        boolean moverWins = isFinished(board);
+        return (player == WHITE) == moverWins ? RESULT_SCALE : 0;
+    }
+
+    //Turns a share of wins back into evaluation units, the inverse of the logistic function used for evaluate
+    private static int toScore(double share) {
+        double clamped = Math.min(Math.max(share, 0.001), 0.999);
+        return (int) Math.round(SCORE_SCALE * Math.log(clamped / (1 - clamped)));
+    }
+
+    //Helper threads are daemons so that an engine left running never keeps the application open
+    private synchronized ExecutorService getHelperPool() {
+        if (helperPool == null) {
+            helperPool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "mcts-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return helperPool;
+    }
+}
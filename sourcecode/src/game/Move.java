@@ -1,5 +1,7 @@
 package game;
 
+import java.util.Arrays;
+
 public class Move {
 
     private int player;
@@ -8,6 +10,37 @@ public class Move {
     int targetRow;
     int targetColumn;
     private boolean isCapture;
+    private int[] path; //Every square of a compound move from start to end, null for a single step or capture
+
+    /*
+    Moves can also be packed into an int so that move generation and search do not need to allocate:
+    bits 0 - 4 from square, bits 5 - 9 target square, bit 10 capture flag, bits 11 - 12 player
+    Squares are the playable square indexes 0 - 31 (row * 4 + column / 2)
+     */
+    static final int CAPTURE_FLAG = 1 << 10;
+    private static final Move[] FLYWEIGHTS = new Move[1 << 13];
+
+    static {
+        //One shared Move for every packed move that can occur, so the object API does not allocate per move either
+        for (int player = 1; player <= 2; player++) {
+            for (int from = 0; from < 32; from++) {
+                int row = from >> 2;
+                int column = ((from & 3) << 1) + (row & 1);
+                for (int distance = 1; distance <= 2; distance++) {
+                    for (int rowStep = -1; rowStep <= 1; rowStep += 2) {
+                        for (int columnStep = -1; columnStep <= 1; columnStep += 2) {
+                            int targetRow = row + rowStep * distance;
+                            int targetColumn = column + columnStep * distance;
+                            if (targetRow >= 0 && targetRow < 8 && targetColumn >= 0 && targetColumn < 8) {
+                                Move move = new Move(player, row, column, targetRow, targetColumn);
+                                FLYWEIGHTS[move.encode()] = move;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
 
     /*
     Constructor that sets the instance values of a Move
@@ -22,6 +55,17 @@ public class Move {
         this.isCapture = (fromRow - targetRow == 2 || fromRow - targetRow == -2);
     }
 
+    /*
+    Constructor for a compound move, a sequence of captures by one piece given as the squares (0 - 31) it visits
+    Built by Board.getLegalMoves when compound jumps are asked for
+     */
+    Move(int player, int[] path) {
+        this(player, path[0] >> 2, ((path[0] & 3) << 1) + ((path[0] >> 2) & 1),
+                path[path.length - 1] >> 2, ((path[path.length - 1] & 3) << 1) + ((path[path.length - 1] >> 2) & 1));
+        this.isCapture = true;
+        this.path = path;
+    }
+
     /*
     Override function to allow Move objects to be compared in logical operators.
      */
@@ -29,15 +73,101 @@ public class Move {
     public boolean equals(Object obj) {
         if (obj instanceof Move) {
             Move move = (Move) obj;
-            return move.fromRow == fromRow && move.fromColumn == fromColumn && move.targetRow == targetRow && move.targetColumn == targetColumn;
+            return move.fromRow == fromRow && move.fromColumn == fromColumn && move.targetRow == targetRow && move.targetColumn == targetColumn
+                    && Arrays.equals(move.path, path);
         }
         return false;
     }
 
+    /*
+    Matches equals, two moves between the same squares share a hash code
+     */
+    @Override
+    public int hashCode() {
+        return ((fromRow * 8 + fromColumn) * 8 + targetRow) * 8 + targetColumn + (path == null ? 0 : 31 * Arrays.hashCode(path));
+    }
+
+    //Returns whether the move is a sequence of more than one capture, see Board.getLegalMoves(int, boolean)
+    public boolean isCompound() {
+        return path != null;
+    }
+
+    //Returns the number of steps or captures the move is made of, 1 unless the move is compound
+    public int getHops() {
+        return path == null ? 1 : path.length - 1;
+    }
+
+    //Returns the row of the square reached after the given number of hops, 0 being the square the move starts from
+    public int getPathRow(int hops) {
+        return hops == 0 ? fromRow : path == null ? targetRow : path[hops] >> 2;
+    }
+
+    public int getPathColumn(int hops) {
+        return hops == 0 ? fromColumn : path == null ? targetColumn : ((path[hops] & 3) << 1) + ((path[hops] >> 2) & 1);
+    }
+
+    //Returns the row of the piece taken by the given hop (from 0), only meaningful for captures
+    public int getCapturedRow(int hop) {
+        return (getPathRow(hop) + getPathRow(hop + 1)) / 2;
+    }
+
+    public int getCapturedColumn(int hop) {
+        return (getPathColumn(hop) + getPathColumn(hop + 1)) / 2;
+    }
+
+    //Returns the index (0 - 31) of the square reached after the given number of hops
+    int pathSquare(int hops) {
+        return hops == 0 ? fromSquare() : path == null ? targetSquare() : path[hops];
+    }
+
+    //Returns the index (0 - 31) of the playable square the move starts from
+    int fromSquare() {
+        return (fromRow << 2) + (fromColumn >> 1);
+    }
+
+    //Returns the index (0 - 31) of the playable square the move ends on
+    int targetSquare() {
+        return (targetRow << 2) + (targetColumn >> 1);
+    }
+
     public boolean isCapture() {
         return isCapture;
     }
 
+    //Returns the move packed into an int, see encode. Compound moves have no packed form
+    public int encode() {
+        if (path != null) {
+            throw new IllegalStateException("A compound move cannot be packed into an int");
+        }
+        return encode(player, fromSquare(), targetSquare(), isCapture);
+    }
+
+    //Packs a move into an int
+    public static int encode(int player, int fromSquare, int targetSquare, boolean capture) {
+        return fromSquare | targetSquare << 5 | (capture ? CAPTURE_FLAG : 0) | player << 11;
+    }
+
+    //Returns the shared Move object for a packed move
+    public static Move of(int move) {
+        return FLYWEIGHTS[move];
+    }
+
+    public static int getFromSquare(int move) {
+        return move & 31;
+    }
+
+    public static int getTargetSquare(int move) {
+        return (move >>> 5) & 31;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE_FLAG) != 0;
+    }
+
+    public static int getPlayer(int move) {
+        return move >>> 11;
+    }
+
     public int getPlayer() {
         return player;
     }
@@ -47,6 +177,16 @@ public class Move {
      */
     @Override
     public String toString () {
+        if (path != null) {
+            StringBuilder text = new StringBuilder();
+            for (int hop = 0; hop <= getHops(); hop++) {
+                text.append(hop == 0 ? "[" : " -> [").append(getPathRow(hop)).append(", ").append(getPathColumn(hop)).append("]");
+            }
+            for (int hop = 0; hop < getHops(); hop++) {
+                text.append(hop == 0 ? " capture at [" : ", [").append(getCapturedRow(hop)).append(", ").append(getCapturedColumn(hop)).append("]");
+            }
+            return text.toString();
+        }
        return ("[") + fromRow + ", " + fromColumn + "] -> [" + targetRow + ", " + targetColumn + "]" +
                (isCapture ? " capture at [" + (targetRow+fromRow)/2 + ", " + (targetColumn+fromColumn)/2 + "]" : "");
     }
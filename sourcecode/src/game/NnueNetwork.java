@@ -0,0 +1,238 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+A small learned evaluation that can replace the handcrafted one in Board.evaluate (see Board.setNetwork)
+The input is one feature per piece type on each of the 32 squares, seen from each player's side of the board:
+    feature = type * 32 + square, type 0 own man, 1 own king, 2 opponent's man, 3 opponent's king
+with the squares turned round (31 - square) for black, so both players see the board from their own side
+The first layer has hidden neurons per side, the accumulator, which only changes for the pieces a move touches,
+so Board keeps it up to date in playMove and undoRecord by adding and subtracting weight rows
+The output is the accumulators of the player to move and then the other player, each clipped to 0 - QA,
+times the output weights, plus the output bias, in the same units as the handcrafted evaluation
+Weights are 16 bit ints, the first layer scaled by QA and the output layer by QB. The file is big endian:
+    int magic ("CKNN"), int version, int hidden
+    short[128 * hidden] feature weights, short[hidden] feature bias, short[2 * hidden] output weights, int output bias
+NnueTrainer writes these files, and the file named by -Dcheckers.network is loaded when the game starts
+The loops are plain int and short array loops, which the JIT vectorises on CPUs with SIMD
+ */
+public final class NnueNetwork {
+
+    static final int FEATURES = 4 * 32;
+    static final int QA = 255;
+    static final int QB = 64;
+    private static final int MAGIC = 0x434B4E4E;
+    private static final int VERSION = 1;
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+
+    final int hidden;
+    final short[] featureWeights; //Row f holds the hidden weights of feature f, starting at f * hidden
+    final short[] featureBias;
+    final short[] outputWeights;
+    final int outputBias;
+    /*
+    Offset into featureWeights of each Board piece (1 white man, 2 black man, 3 white king, 4 black king) on each
+    square, as seen by white and by black, indexed by piece * 32 + square
+     */
+    private final int[] whiteRows = new int[5 * 32];
+    private final int[] blackRows = new int[5 * 32];
+
+    NnueNetwork(int hidden, short[] featureWeights, short[] featureBias, short[] outputWeights, int outputBias) {
+        if (featureWeights.length != FEATURES * hidden || featureBias.length != hidden || outputWeights.length != 2 * hidden) {
+            throw new IllegalArgumentException("Weights do not match a network with " + hidden + " hidden neurons");
+        }
+        this.hidden = hidden;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+        for (int piece = 1; piece <= 4; piece++) {
+            boolean white = piece == 1 || piece == 3;
+            boolean king = piece >= 3;
+            for (int sq = 0; sq < 32; sq++) {
+                whiteRows[piece * 32 + sq] = feature(white, king, sq) * hidden;
+                blackRows[piece * 32 + sq] = feature(!white, king, 31 - sq) * hidden;
+            }
+        }
+    }
+
+    //Returns the feature of a piece for a player who owns it (own) or not, on a square already turned round for black
+    static int feature(boolean own, boolean king, int square) {
+        return ((own ? 0 : 2) + (king ? 1 : 0)) * 32 + square;
+    }
+
+    public int getHidden() {
+        return hidden;
+    }
+
+    /*
+    Returns the network in the file named by the checkers.network system property, or null if it is not set
+    A file that cannot be read is reported and the handcrafted evaluation is used, like a bad weights file
+     */
+    static NnueNetwork fromSystemProperty() {
+        String file = System.getProperty("checkers.network");
+        if (file == null) {
+            return null;
+        }
+        try {
+            return load(new File(file));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.log(Log.ERROR, "Could not load evaluation network from " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static NnueNetwork load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a network file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported network version " + version);
+            }
+            int hidden = in.readInt();
+            if (hidden < 1 || hidden > 4096) {
+                throw new IOException("Bad hidden size " + hidden);
+            }
+            short[] featureWeights = readShorts(in, FEATURES * hidden);
+            short[] featureBias = readShorts(in, hidden);
+            short[] outputWeights = readShorts(in, 2 * hidden);
+            return new NnueNetwork(hidden, featureWeights, featureBias, outputWeights, in.readInt());
+        }
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hidden);
+            writeShorts(out, featureWeights);
+            writeShorts(out, featureBias);
+            writeShorts(out, outputWeights);
+            out.writeInt(outputBias);
+        }
+    }
+
+    //A network with small random weights, for measuring speed before a trained network is available
+    public static NnueNetwork random(int hidden, long seed) {
+        Random random = new Random(seed);
+        short[] featureWeights = new short[FEATURES * hidden];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(2 * QA / 8 + 1) - QA / 8);
+        }
+        short[] featureBias = new short[hidden];
+        short[] outputWeights = new short[2 * hidden];
+        for (int i = 0; i < outputWeights.length; i++) {
+            outputWeights[i] = (short) (random.nextInt(2 * QB + 1) - QB);
+        }
+        return new NnueNetwork(hidden, featureWeights, featureBias, outputWeights, 0);
+    }
+
+    /*
+    The first layer of a network for one board, for both players' sides
+    Pieces are added and removed as they move, the sums are exact so taking a move back restores them exactly
+     */
+    static final class Accumulator {
+        final NnueNetwork network;
+        final short[] white;
+        final short[] black;
+
+        //Sums the feature rows of every piece on the bitboards
+        Accumulator(NnueNetwork network, int whiteBits, int blackBits, int kingBits) {
+            this.network = network;
+            white = network.featureBias.clone();
+            black = network.featureBias.clone();
+            for (int sq = 0; sq < 32; sq++) {
+                int bit = 1 << sq;
+                if (((whiteBits | blackBits) & bit) != 0) {
+                    add((whiteBits & bit) != 0 ? ((kingBits & bit) != 0 ? 3 : 1) : ((kingBits & bit) != 0 ? 4 : 2), sq);
+                }
+            }
+        }
+
+        void add(int piece, int square) {
+            int index = piece * 32 + square;
+            addRow(white, network.featureWeights, network.whiteRows[index], network.hidden);
+            addRow(black, network.featureWeights, network.blackRows[index], network.hidden);
+        }
+
+        void remove(int piece, int square) {
+            int index = piece * 32 + square;
+            subtractRow(white, network.featureWeights, network.whiteRows[index], network.hidden);
+            subtractRow(black, network.featureWeights, network.blackRows[index], network.hidden);
+        }
+
+        //Moves a piece, which may change type on the way when it is crowned or uncrowned
+        void move(int fromPiece, int fromSquare, int toPiece, int toSquare) {
+            int hidden = network.hidden;
+            short[] weights = network.featureWeights;
+            int removed = network.whiteRows[fromPiece * 32 + fromSquare];
+            int added = network.whiteRows[toPiece * 32 + toSquare];
+            for (int i = 0; i < hidden; i++) {
+                white[i] = (short) (white[i] - weights[removed + i] + weights[added + i]);
+            }
+            removed = network.blackRows[fromPiece * 32 + fromSquare];
+            added = network.blackRows[toPiece * 32 + toSquare];
+            for (int i = 0; i < hidden; i++) {
+                black[i] = (short) (black[i] - weights[removed + i] + weights[added + i]);
+            }
+        }
+
+        //Returns the evaluation for the given player to move, in the units of Board.evaluate
+        int evaluate(int player) {
+            short[] own = player == WHITE ? white : black;
+            short[] other = player == WHITE ? black : white;
+            int hidden = network.hidden;
+            short[] weights = network.outputWeights;
+            int sum = 0;
+            for (int i = 0; i < hidden; i++) {
+                sum += clip(own[i]) * weights[i];
+            }
+            for (int i = 0; i < hidden; i++) {
+                sum += clip(other[i]) * weights[hidden + i];
+            }
+            return (sum + network.outputBias) / (QA * QB);
+        }
+
+        private static int clip(short value) {
+            return Math.min(Math.max(value, 0), QA);
+        }
+
+        private static void addRow(short[] accumulator, short[] weights, int offset, int hidden) {
+            for (int i = 0; i < hidden; i++) {
+                accumulator[i] = (short) (accumulator[i] + weights[offset + i]);
+            }
+        }
+
+        private static void subtractRow(short[] accumulator, short[] weights, int offset, int hidden) {
+            for (int i = 0; i < hidden; i++) {
+                accumulator[i] = (short) (accumulator[i] - weights[offset + i]);
+            }
+        }
+    }
+
+    private static short[] readShorts(DataInputStream in, int count) throws IOException {
+        short[] values = new short[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readShort();
+        }
+        return values;
+    }
+
+    private static void writeShorts(DataOutputStream out, short[] values) throws IOException {
+        for (short value : values) {
+            out.writeShort(value);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+Trains an NnueNetwork on the positions of finished games, run with:
+    java game.NnueTrainer <network out> selfplay [games] [depth] [hidden] [epochs] [threads]
+    java game.NnueTrainer <network out> <games.pdn or GameArchive> [hidden] [epochs] [threads]
+Every position of a game with a known result is a sample, labelled 1, 0.5 or 0 for how the game ended
+for the player to move, and the network is fitted so that 1 / (1 + e^(-evaluation / SCORE_SCALE)) matches it
+Training is done in floats with Adam over mini-batches, the gradient of each batch summed in parallel
+like Tuner, and the weights are then rounded to the 16 bit ints of the network file
+The error of the handcrafted evaluation on the same positions is printed as well, to compare the two
+ */
+public class NnueTrainer {
+
+    private static final double SCORE_SCALE = 150; //Evaluation units per unit of the sigmoid's input, close to what Tuner fits
+    private static final int BATCH = 4096;
+    private static final double LEARNING_RATE = 0.002;
+    private static final double MAX_FEATURE_WEIGHT = 2; //Keeps 24 pieces' worth of rows inside a 16 bit accumulator
+    private static final double MAX_OUTPUT_WEIGHT = 32767.0 / NnueNetwork.QB / SCORE_SCALE;
+
+    private final int hidden;
+    //Samples: white, black and king bitboards, then the player to move plus the result (0 loss, 1 draw, 2 win) << 2
+    private int[] positions = new int[4 * 1024];
+    private int samples;
+
+    //The float network: feature rows, feature bias, output weights for the player to move then the other player, output bias
+    private final double[] featureWeights;
+    private final double[] featureBias;
+    private final double[] outputWeights;
+    private double outputBias;
+
+    public NnueTrainer(int hidden, long seed) {
+        this.hidden = hidden;
+        Random random = new Random(seed);
+        featureWeights = new double[NnueNetwork.FEATURES * hidden];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (random.nextDouble() - 0.5) * 0.2;
+        }
+        featureBias = new double[hidden];
+        java.util.Arrays.fill(featureBias, 0.5);
+        outputWeights = new double[2 * hidden];
+        for (int i = 0; i < outputWeights.length; i++) {
+            outputWeights[i] = (random.nextDouble() - 0.5) * 0.2;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java game.NnueTrainer <network out> selfplay [games] [depth] [hidden] [epochs] [threads]");
+            System.out.println("       java game.NnueTrainer <network out> <games.pdn or archive> [hidden] [epochs] [threads]");
+            return;
+        }
+        boolean selfPlay = args[1].equals("selfplay");
+        int next = selfPlay ? 4 : 2;
+        int hidden = args.length > next ? Integer.parseInt(args[next]) : 32;
+        int epochs = args.length > next + 1 ? Integer.parseInt(args[next + 1]) : 20;
+        int threads = args.length > next + 2 ? Integer.parseInt(args[next + 2]) : Runtime.getRuntime().availableProcessors();
+        NnueTrainer trainer = new NnueTrainer(hidden, 1);
+        long start = System.nanoTime();
+        if (selfPlay) {
+            int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            int depth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+            Tuner.selfPlay(games, depth, threads, 1, game -> trainer.addGame(game, Tuner.RANDOM_PLIES));
+        } else {
+            Tuner.readGames(new File(args[1]), game -> trainer.addGame(game, 0));
+        }
+        System.out.printf("%d positions in %.1fs%n", trainer.samples, (System.nanoTime() - start) / 1e9);
+        trainer.train(epochs, threads);
+        NnueNetwork network = trainer.toNetwork();
+        network.write(new File(args[0]));
+        System.out.printf("Handcrafted error %.6f, network error %.6f%n", trainer.handcraftedError(), trainer.networkError(network));
+    }
+
+    //Adds every position of a game after the first skipPlies moves, games without a result are skipped
+    public void addGame(GameRecord game, int skipPlies) {
+        int result = game.getResult();
+        if (result == GameRecord.UNKNOWN) {
+            return;
+        }
+        int winner = result == GameRecord.WHITE_WINS ? 1 : result == GameRecord.BLACK_WINS ? 2 : 0;
+        Board board = game.getStartBoard();
+        ArrayList<Move> moves = game.getMoves();
+        for (int ply = 0; ply < moves.size(); ply++) {
+            board.doMove(moves.get(ply));
+            if (ply + 1 < skipPlies) {
+                continue;
+            }
+            if (samples * 4 == positions.length) {
+                positions = java.util.Arrays.copyOf(positions, positions.length * 2);
+            }
+            int player = board.getCurrentPlayer();
+            int offset = samples * 4;
+            positions[offset] = board.getWhiteBits();
+            positions[offset + 1] = board.getBlackBits();
+            positions[offset + 2] = board.getKingBits();
+            positions[offset + 3] = player | (winner == 0 ? 1 : winner == player ? 2 : 0) << 2;
+            samples++;
+        }
+    }
+
+    public int getSampleCount() {
+        return samples;
+    }
+
+    //Runs the given number of passes over the samples in a random order
+    public void train(int epochs, int threads) throws InterruptedException {
+        int parameters = featureWeights.length + featureBias.length + outputWeights.length + 1;
+        double[] mean = new double[parameters];
+        double[] variance = new double[parameters];
+        int[] order = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(2);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long step = 0;
+        try {
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                for (int i = samples - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                }
+                double error = 0;
+                for (int batch = 0; batch < samples; batch += BATCH) {
+                    double[] gradient = new double[parameters + 1];
+                    int end = Math.min(samples, batch + BATCH);
+                    int slice = (end - batch + threads - 1) / threads;
+                    ArrayList<Future<double[]>> parts = new ArrayList<>();
+                    for (int t = 0; t < threads; t++) {
+                        final int from = Math.min(end, batch + t * slice);
+                        final int to = Math.min(end, from + slice);
+                        parts.add(pool.submit(() -> gradient(order, from, to)));
+                    }
+                    for (Future<double[]> part : parts) {
+                        double[] sums = part.get();
+                        for (int i = 0; i < gradient.length; i++) {
+                            gradient[i] += sums[i];
+                        }
+                    }
+                    error += gradient[parameters];
+                    step++;
+                    adamStep(gradient, end - batch, mean, variance, step);
+                }
+                System.out.printf("Epoch %d error %.6f%n", epoch, error / samples);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training thread failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    //Rounds the trained weights into a network
+    public NnueNetwork toNetwork() {
+        short[] quantisedFeatures = new short[featureWeights.length];
+        for (int i = 0; i < featureWeights.length; i++) {
+            quantisedFeatures[i] = (short) Math.round(featureWeights[i] * NnueNetwork.QA);
+        }
+        short[] quantisedBias = new short[hidden];
+        for (int i = 0; i < hidden; i++) {
+            quantisedBias[i] = (short) Math.round(featureBias[i] * NnueNetwork.QA);
+        }
+        short[] quantisedOutput = new short[2 * hidden];
+        for (int i = 0; i < outputWeights.length; i++) {
+            quantisedOutput[i] = (short) Math.round(outputWeights[i] * SCORE_SCALE * NnueNetwork.QB);
+        }
+        int bias = (int) Math.round(outputBias * SCORE_SCALE * NnueNetwork.QA * NnueNetwork.QB);
+        return new NnueNetwork(hidden, quantisedFeatures, quantisedBias, quantisedOutput, bias);
+    }
+
+    /*
+    Returns the summed gradient of the squared error over samples order[from] to order[to - 1],
+    with the summed error itself at the end
+     */
+    private double[] gradient(int[] order, int from, int to) {
+        int parameters = featureWeights.length + featureBias.length + outputWeights.length + 1;
+        double[] gradient = new double[parameters + 1];
+        int biasStart = featureWeights.length;
+        int outputStart = biasStart + hidden;
+        double[][] accumulators = new double[2][hidden];
+        int[][] active = new int[2][32];
+        int[] activeCount = new int[2];
+        for (int s = from; s < to; s++) {
+            int offset = order[s] * 4;
+            int player = positions[offset + 3] & 3;
+            double result = (positions[offset + 3] >>> 2) * 0.5;
+            features(positions[offset], positions[offset + 1], positions[offset + 2], player, active, activeCount);
+            double output = outputBias;
+            for (int side = 0; side < 2; side++) {
+                double[] accumulator = accumulators[side];
+                System.arraycopy(featureBias, 0, accumulator, 0, hidden);
+                for (int f = 0; f < activeCount[side]; f++) {
+                    int row = active[side][f] * hidden;
+                    for (int i = 0; i < hidden; i++) {
+                        accumulator[i] += featureWeights[row + i];
+                    }
+                }
+                for (int i = 0; i < hidden; i++) {
+                    output += clip(accumulator[i]) * outputWeights[side * hidden + i];
+                }
+            }
+            double predicted = 1 / (1 + Math.exp(-output));
+            double difference = predicted - result;
+            gradient[parameters] += difference * difference;
+            double slope = 2 * difference * predicted * (1 - predicted);
+            gradient[parameters - 1] += slope;
+            for (int side = 0; side < 2; side++) {
+                double[] accumulator = accumulators[side];
+                for (int i = 0; i < hidden; i++) {
+                    gradient[outputStart + side * hidden + i] += slope * clip(accumulator[i]);
+                    if (accumulator[i] <= 0 || accumulator[i] >= 1) {
+                        accumulator[i] = 0; //No gradient through a clipped neuron
+                    } else {
+                        accumulator[i] = slope * outputWeights[side * hidden + i];
+                    }
+                }
+                for (int i = 0; i < hidden; i++) {
+                    gradient[biasStart + i] += accumulator[i];
+                }
+                for (int f = 0; f < activeCount[side]; f++) {
+                    int row = active[side][f] * hidden;
+                    for (int i = 0; i < hidden; i++) {
+                        gradient[row + i] += accumulator[i];
+                    }
+                }
+            }
+        }
+        return gradient;
+    }
+
+    private void adamStep(double[] gradient, int count, double[] mean, double[] variance, long step) {
+        double meanCorrection = 1 - Math.pow(0.9, step);
+        double varianceCorrection = 1 - Math.pow(0.999, step);
+        int biasStart = featureWeights.length;
+        int outputStart = biasStart + hidden;
+        for (int p = 0; p < mean.length; p++) {
+            double g = gradient[p] / count;
+            mean[p] = 0.9 * mean[p] + 0.1 * g;
+            variance[p] = 0.999 * variance[p] + 0.001 * g * g;
+            double change = LEARNING_RATE * (mean[p] / meanCorrection) / (Math.sqrt(variance[p] / varianceCorrection) + 1e-8);
+            if (p < biasStart) {
+                featureWeights[p] = clamp(featureWeights[p] - change, MAX_FEATURE_WEIGHT);
+            } else if (p < outputStart) {
+                featureBias[p - biasStart] = clamp(featureBias[p - biasStart] - change, MAX_FEATURE_WEIGHT);
+            } else if (p < mean.length - 1) {
+                outputWeights[p - outputStart] = clamp(outputWeights[p - outputStart] - change, MAX_OUTPUT_WEIGHT);
+            } else {
+                outputBias -= change;
+            }
+        }
+    }
+
+    //Lists the features of each piece, as seen by the player to move (side 0) and the other player (side 1)
+    private static void features(int whiteBits, int blackBits, int kingBits, int player, int[][] active, int[] activeCount) {
+        activeCount[0] = 0;
+        activeCount[1] = 0;
+        int pieces = whiteBits | blackBits;
+        while (pieces != 0) {
+            int sq = Integer.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            boolean white = (whiteBits & (1 << sq)) != 0;
+            boolean king = (kingBits & (1 << sq)) != 0;
+            int whiteSide = player == 1 ? 0 : 1;
+            active[whiteSide][activeCount[whiteSide]++] = NnueNetwork.feature(white, king, sq);
+            active[1 - whiteSide][activeCount[1 - whiteSide]++] = NnueNetwork.feature(!white, king, 31 - sq);
+        }
+    }
+
+    //Mean squared error of the handcrafted evaluation, with the same scale as the network
+    double handcraftedError() {
+        Board board = new Board(1);
+        double error = 0;
+        for (int s = 0; s < samples; s++) {
+            int offset = s * 4;
+            int player = positions[offset + 3] & 3;
+            board.restorePosition(positions[offset], positions[offset + 1], positions[offset + 2], player, 1);
+            error += squaredError(board.evaluate(player), positions[offset + 3] >>> 2);
+        }
+        return error / samples;
+    }
+
+    //Mean squared error of a network, after its weights have been rounded
+    double networkError(NnueNetwork network) {
+        double error = 0;
+        for (int s = 0; s < samples; s++) {
+            int offset = s * 4;
+            int player = positions[offset + 3] & 3;
+            NnueNetwork.Accumulator accumulator = new NnueNetwork.Accumulator(network, positions[offset], positions[offset + 1], positions[offset + 2]);
+            error += squaredError(accumulator.evaluate(player), positions[offset + 3] >>> 2);
+        }
+        return error / samples;
+    }
+
+    private static double squaredError(int evaluation, int result) {
+        double difference = 1 / (1 + Math.exp(-evaluation / SCORE_SCALE)) - result * 0.5;
+        return difference * difference;
+    }
+
+    private static double clip(double value) {
+        return Math.min(Math.max(value, 0), 1);
+    }
+
+    private static double clamp(double value, double limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+}
@@ -0,0 +1,95 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/*
+Opening book lookup, giving a move for positions reached in earlier games without searching them
+The book file written by OpeningBookBuilder is a list of 16 byte entries sorted by key:
+    long key    - Zobrist key of the position, including the player to move (see Board.getHash)
+    int move    - the move played from it, packed as in Move.encode
+    int weight  - how good the move did, a higher weight means the move is picked more often
+The file is memory-mapped and binary searched, so a lookup reads a handful of entries and allocates nothing
+ */
+public class OpeningBook {
+
+    static final int ENTRY_BYTES = 16;
+
+    private final MappedByteBuffer entries;
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer entries) {
+        this.entries = entries;
+        this.size = entries.capacity() / ENTRY_BYTES;
+    }
+
+    //Maps a book file written by OpeningBookBuilder
+    public static OpeningBook open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() % ENTRY_BYTES != 0 || channel.size() / ENTRY_BYTES > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not an opening book");
+            }
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    //Returns the number of position and move entries in the book
+    public int size() {
+        return size;
+    }
+
+    /*
+    Returns a book move for the board's position, or null if the position is not in the book
+    Moves are picked at random in proportion to their weights, so the engine does not always play the same opening
+    The move is not checked against the legal moves, a different position with the same key could have stored it
+     */
+    public Move probe(Board board, Random random) {
+        long key = board.getHash();
+        int first = findFirst(key);
+        int total = 0;
+        for (int i = first; i < size && getKey(i) == key; i++) {
+            total += getWeight(i);
+        }
+        if (total <= 0) {
+            return null;
+        }
+        int pick = random.nextInt(total);
+        for (int i = first; ; i++) {
+            pick -= getWeight(i);
+            if (pick < 0) {
+                return Move.of(getMove(i));
+            }
+        }
+    }
+
+    //Binary search for the first entry with the given key, or the entry where it would be if there is none
+    private int findFirst(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getKey(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long getKey(int entry) {
+        return entries.getLong(entry * ENTRY_BYTES);
+    }
+
+    private int getMove(int entry) {
+        return entries.getInt(entry * ENTRY_BYTES + 8);
+    }
+
+    private int getWeight(int entry) {
+        return entries.getInt(entry * ENTRY_BYTES + 12);
+    }
+}
@@ -0,0 +1,156 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/*
+Builds the opening book read by OpeningBook, run with: java game.OpeningBookBuilder <file> [games] [depth] [plies]
+Games are played by the engine against itself from the start position, with the first few moves of each game
+picked at random so the games spread over different openings (see Tournament.playGame). Games can also be added from elsewhere with addGame
+or imported from a PDN file or GameArchive with: java game.OpeningBookBuilder <file> -import <games.pdn or archive> [plies]
+Every move played in the first plies of a game is counted for the player who made it:
+    weight = 2 * wins + draws
+so moves that did well are played more often and moves that only ever lost are left out of the book
+ */
+public class OpeningBookBuilder {
+
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+    private static final int RANDOM_PLIES = 4; //Plies at the start of each self-play game picked at random
+
+    private final int bookPlies;
+    //Position key -> packed move -> {wins, draws, losses} for the player who made the move
+    private final HashMap<Long, HashMap<Integer, int[]>> results = new HashMap<>();
+
+    //Creates a builder that keeps the first bookPlies plies of every game added to it
+    public OpeningBookBuilder(int bookPlies) {
+        this.bookPlies = bookPlies;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java game.OpeningBookBuilder <file> [games] [depth] [plies]");
+            return;
+        }
+        if (args.length > 2 && args[1].equals("-import")) {
+            OpeningBookBuilder builder = new OpeningBookBuilder(args.length > 3 ? Integer.parseInt(args[3]) : 10);
+            long games = builder.importGames(new File(args[2]));
+            int entries = builder.write(new File(args[0]));
+            System.out.println("Imported " + games + " games, wrote " + entries + " entries to " + args[0]);
+            return;
+        }
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int plies = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies);
+        Engine engine = new Engine(depth, 0);
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            builder.playGame(engine, random, game % 2 == 0 ? WHITE : BLACK);
+            if ((game + 1) % 10 == 0) {
+                System.out.printf("%d games, %d positions, %.1fs%n", game + 1, builder.results.size(), (System.nanoTime() - start) / 1e9);
+            }
+        }
+        int entries = builder.write(new File(args[0]));
+        System.out.println("Wrote " + entries + " entries to " + args[0]);
+    }
+
+    //Plays one game of the engine against itself, with random opening moves, and adds it to the book
+    public void playGame(Engine engine, Random random, int startingPlayer) {
+        ArrayList<Move> moves = new ArrayList<>();
+        engine.getTranspositionTable().clear();
+        int winner = Tournament.playGame(new Board(startingPlayer), engine, engine, random, RANDOM_PLIES, moves);
+        addGame(startingPlayer, moves, winner);
+    }
+
+    /*
+    Adds a finished game to the book, given the player who moved first, the moves in order
+    and the winning player (0 for a draw)
+     */
+    public void addGame(int startingPlayer, ArrayList<Move> moves, int winner) {
+        Board board = new Board(startingPlayer);
+        for (int ply = 0; ply < moves.size() && ply < bookPlies; ply++) {
+            Move move = moves.get(ply);
+            int player = board.getCurrentPlayer();
+            HashMap<Integer, int[]> positionMoves = results.get(board.getHash());
+            if (positionMoves == null) {
+                positionMoves = new HashMap<>();
+                results.put(board.getHash(), positionMoves);
+            }
+            int code = Move.encode(player, move.fromSquare(), move.targetSquare(), move.isCapture());
+            int[] counts = positionMoves.get(code);
+            if (counts == null) {
+                counts = new int[3];
+                positionMoves.put(code, counts);
+            }
+            counts[winner == 0 ? 1 : winner == player ? 0 : 2]++;
+            board.doMove(move);
+        }
+    }
+
+    /*
+    Adds a recorded game to the book, games from a position other than the start and games without a result are skipped
+    Returns whether the game was added
+     */
+    public boolean addGame(GameRecord game) {
+        int result = game.getResult();
+        if (!game.isStandardStart() || result == GameRecord.UNKNOWN) {
+            return false;
+        }
+        addGame(game.getStartBoard().getCurrentPlayer(), game.getMoves(), result == GameRecord.WHITE_WINS ? WHITE : result == GameRecord.BLACK_WINS ? BLACK : 0);
+        return true;
+    }
+
+    //Adds every game in a PDN file, or a GameArchive when the file does not end in .pdn, returns the number added
+    public long importGames(File file) throws IOException {
+        long added = 0;
+        if (file.getName().toLowerCase().endsWith(".pdn")) {
+            try (PdnReader reader = new PdnReader(new BufferedReader(new FileReader(file)))) {
+                GameRecord game;
+                while ((game = reader.next()) != null) {
+                    added += addGame(game) ? 1 : 0;
+                }
+            }
+        } else {
+            GameArchive archive = GameArchive.open(file);
+            for (long i = 0; i < archive.size(); i++) {
+                added += addGame(archive.read(i)) ? 1 : 0;
+            }
+        }
+        return added;
+    }
+
+    //Writes the book sorted by key, returns the number of entries written
+    public int write(File file) throws IOException {
+        ArrayList<long[]> entries = new ArrayList<>();
+        for (Map.Entry<Long, HashMap<Integer, int[]>> position : results.entrySet()) {
+            for (Map.Entry<Integer, int[]> move : position.getValue().entrySet()) {
+                int[] counts = move.getValue();
+                int weight = 2 * counts[0] + counts[1];
+                if (weight > 0) {
+                    entries.add(new long[]{position.getKey(), move.getKey(), weight});
+                }
+            }
+        }
+        //Sorted by key to allow binary search, heaviest move first within a position
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeInt((int) entry[2]);
+            }
+        }
+        return entries.size();
+    }
+}
@@ -0,0 +1,138 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+Checks that games in standard PDN survive the trip through PdnReader, PdnWriter and GameArchive unchanged
+Each game is read, written back out, read again and stored in an archive, and every copy must have the same moves;
+the written move text must also match the original token for token, so the standard square numbers are kept
+It also checks opening moves that standard numbering allows or forbids, which catch a mirrored numbering
+Run with: java game.PdnCheck
+ */
+public class PdnCheck {
+
+    /*
+    The Old Fourteenth opening, 11-15 23-19 8-11 22-17 4-8, played on through exchanges where the turn passes
+    after each capture as in standard PDN, and a double jump written as one move from a set up position
+     */
+    private static final String[] GAMES = {
+            "[Event \"Old Fourteenth\"]\n"
+                    + "1. 11-15 23-19 2. 8-11 22-17 3. 4-8 17-13 4. 15-18 24-20 5. 11-15 28-24 6. 8-11\n"
+                    + "26-23 7. 9-14 31-26 8. 6-9 13x6 9. 2x9 26-22 10. 1-6 22-17 11. 18-22 25x18 12.\n"
+                    + "15x22 17-13 *\n",
+            "[Event \"Double jump\"]\n"
+                    + "[FEN \"W:W27:B1,14,23\"]\n"
+                    + "1. 27x18x9 1-6 2. 9-5 *\n",
+    };
+    //The seven opening moves of standard checkers, and moves that only a mirrored numbering would allow
+    private static final String[] LEGAL_OPENINGS = {"9-13", "9-14", "10-14", "10-15", "11-15", "11-16", "12-16"};
+    private static final String[] ILLEGAL_OPENINGS = {"12-15", "11-14", "10-13", "21-17"};
+
+    public static void main(String[] args) throws IOException {
+        boolean passed = true;
+        File file = File.createTempFile("pdncheck", ".archive");
+        File index = GameArchive.indexFile(file);
+        file.deleteOnExit();
+        index.deleteOnExit();
+        try (GameArchiveWriter archive = new GameArchiveWriter(file)) {
+            for (String pdn : GAMES) {
+                archive.append(read(pdn));
+            }
+        }
+        GameArchive archive = GameArchive.open(file);
+        for (int i = 0; i < GAMES.length; i++) {
+            GameRecord game = read(GAMES[i]);
+            System.out.println(game.getTag("Event") + ": " + game.getMoves().size() + " moves, ends at " + game.replay().toFen());
+            String written = write(game);
+            if (!moveTokens(written).equals(moveTokens(GAMES[i]))) {
+                System.out.println("    FAILED, written as " + moveTokens(written));
+                passed = false;
+            }
+            if (!sameMoves(game, read(written))) {
+                System.out.println("    FAILED, the written game reads back differently");
+                passed = false;
+            }
+            if (!sameMoves(game, archive.read(i))) {
+                System.out.println("    FAILED, the archived game reads back differently");
+                passed = false;
+            }
+        }
+        for (String move : LEGAL_OPENINGS) {
+            if (!readsOpening(move)) {
+                System.out.println("Opening " + move + " FAILED, it should be legal");
+                passed = false;
+            }
+        }
+        for (String move : ILLEGAL_OPENINGS) {
+            if (readsOpening(move)) {
+                System.out.println("Opening " + move + " FAILED, it should be illegal");
+                passed = false;
+            }
+        }
+        System.out.println(passed ? "All PDN games round trip" : "PDN round trip failed");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static GameRecord read(String pdn) throws IOException {
+        try (PdnReader reader = new PdnReader(new BufferedReader(new StringReader(pdn)))) {
+            return reader.next();
+        }
+    }
+
+    private static String write(GameRecord game) throws IOException {
+        StringWriter text = new StringWriter();
+        try (PdnWriter writer = new PdnWriter(text)) {
+            writer.write(game);
+        }
+        return text.toString();
+    }
+
+    //Returns whether a single move from the start position, black to move, is read as legal
+    private static boolean readsOpening(String move) throws IOException {
+        try {
+            read("1. " + move + " *");
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    //Returns the moves and result of PDN text, leaving out tags and move numbers
+    private static ArrayList<String> moveTokens(String pdn) {
+        ArrayList<String> tokens = new ArrayList<>();
+        for (String line : pdn.split("\n")) {
+            if (line.startsWith("[")) {
+                continue;
+            }
+            for (String token : line.trim().split("\\s+")) {
+                if (!token.isEmpty() && !token.endsWith(".")) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean sameMoves(GameRecord expected, GameRecord actual) {
+        if (!expected.getStartFen().equals(actual.getStartFen())) {
+            return false;
+        }
+        int[] expectedMoves = new int[expected.getMoves().size()];
+        int[] actualMoves = new int[actual.getMoves().size()];
+        for (int i = 0; i < expectedMoves.length; i++) {
+            expectedMoves[i] = expected.getMoves().get(i).encode();
+        }
+        for (int i = 0; i < actualMoves.length; i++) {
+            actualMoves[i] = actual.getMoves().get(i).encode();
+        }
+        return Arrays.equals(expectedMoves, actualMoves);
+    }
+}
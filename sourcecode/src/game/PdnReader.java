@@ -0,0 +1,300 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/*
+Reads games from PDN text one at a time, so a file of any size can be read without loading it whole
+Understands the form written by PdnWriter and the usual PDN extras: comments in {} or after ;,
+variations in () which are skipped, move numbers, and multi-jumps written with only their first and last squares
+Games without a FEN tag start from the start position with black to move, as in standard PDN
+Every move is checked against the legal moves as it is read. Captures are returned as single hops,
+one Move per piece taken, which is how they are played by makeMove and stored by GameArchive
+Here a capture keeps the turn, but in standard PDN the turn passes once a jump is finished, so a move by the
+opponent straight after a capture is read as ending the capturing player's turn
+ */
+public class PdnReader implements Closeable {
+
+    private final Reader in;
+    private int next = -2; //One character of lookahead, -2 when nothing has been read yet
+    private int games;
+
+    //The reader should be buffered, it is read one character at a time
+    public PdnReader(Reader in) {
+        this.in = in;
+    }
+
+    /*
+    Reads the next game, or returns null at the end of the input
+    Throws IllegalArgumentException for a game with an illegal or unreadable move
+     */
+    public GameRecord next() throws IOException {
+        Board board = null;
+        ArrayList<Move> moves = null;
+        String fen = null;
+        int result = GameRecord.UNKNOWN;
+        ArrayList<String[]> tags = new ArrayList<>();
+        while (true) {
+            int c = skipSpace();
+            if (c == -1 || (c == '[' && board != null)) {
+                break; //End of input, or the tags of the next game when this one had no result
+            }
+            if (c == '[') {
+                String[] tag = readTag();
+                if (tag[0].equals("FEN")) {
+                    fen = tag[1];
+                } else if (tag[0].equals("Result")) {
+                    result = parseResult(tag[1], result);
+                } else {
+                    tags.add(tag);
+                }
+                continue;
+            }
+            if (c == '{' || c == '(' || c == ';') {
+                skipComment(c);
+                continue;
+            }
+            String token = readToken();
+            if (board == null) {
+                board = fen != null ? Board.fromFen(fen) : Board.fromFen("B" + GameRecord.START_FEN);
+                moves = new ArrayList<>();
+            }
+            if (isResult(token)) {
+                result = parseResult(token, result);
+                break;
+            }
+            if (Character.isDigit(token.charAt(token.length() - 1))) {
+                readMove(token, board, moves);
+            } //Otherwise a move number such as 12. or 12... which is not needed
+        }
+        if (board == null && tags.isEmpty() && fen == null) {
+            return null;
+        }
+        games++;
+        if (board == null) {
+            moves = new ArrayList<>();
+        }
+        GameRecord game = new GameRecord(fen != null ? fen : "B" + GameRecord.START_FEN, moves, result);
+        for (String[] tag : tags) {
+            game.setTag(tag[0], tag[1]);
+        }
+        return game;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    //Turns a move such as 22-18, 9x18x27 or 9x27 into legal single moves and plays them on the board
+    private void readMove(String token, Board board, ArrayList<Move> moves) {
+        boolean capture = token.indexOf('x') >= 0 || token.indexOf(':') >= 0;
+        String[] parts = token.split("[-x:]");
+        if (parts.length < 2 || (!capture && parts.length != 2)) {
+            throw illegal(token);
+        }
+        int[] squares = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                int number = Integer.parseInt(parts[i]);
+                if (number < 1 || number > 32) {
+                    throw illegal(token);
+                }
+                squares[i] = Board.squareOfNumber(number);
+            } catch (NumberFormatException e) {
+                throw illegal(token);
+            }
+        }
+        int player = board.getCurrentPlayer();
+        int opponent = player == 1 ? 2 : 1;
+        int opponentBits = opponent == 1 ? board.getWhiteBits() : board.getBlackBits();
+        boolean afterCapture = !moves.isEmpty() && moves.get(moves.size() - 1).isCapture();
+        if (afterCapture && (opponentBits & 1 << squares[0]) != 0) {
+            player = opponent; //The capturing player's turn has ended
+        }
+        ArrayList<Move> hops;
+        if (capture) {
+            hops = findHops(board, player, squares);
+        } else {
+            Move step = find(board.getLegalMoves(player), squares[0], squares[1], false);
+            hops = new ArrayList<>();
+            if (step != null) {
+                hops.add(step);
+            }
+        }
+        if (hops == null || hops.isEmpty()) {
+            throw illegal(token);
+        }
+        for (Move hop : hops) {
+            board.doMove(hop);
+            moves.add(hop);
+        }
+    }
+
+    /*
+    Returns the single captures of a multi-jump through the given squares, or null if there is no such jump
+    The squares are tried as one hop each first, then as the squares along a longer jump that has been shortened
+     */
+    private static ArrayList<Move> findHops(Board board, int player, int[] squares) {
+        ArrayList<Move> hops = new ArrayList<>();
+        for (int i = 0; i + 1 < squares.length; i++) {
+            Move hop = find(board.getLegalMoves(player), squares[i], squares[i + 1], true);
+            if (hop == null) {
+                break;
+            }
+            board.doMove(hop);
+            hops.add(hop);
+        }
+        for (int i = 0; i < hops.size(); i++) {
+            board.undoMove();
+        }
+        if (hops.size() == squares.length - 1) {
+            return hops;
+        }
+        for (Move move : board.getLegalMoves(player, true)) {
+            if (move.isCompound() && followsSquares(move, squares)) {
+                hops.clear();
+                for (int hop = 0; hop < move.getHops(); hop++) {
+                    hops.add(Move.of(Move.encode(player, move.pathSquare(hop), move.pathSquare(hop + 1), true)));
+                }
+                return hops;
+            }
+        }
+        return null;
+    }
+
+    //Returns whether a compound move starts and ends on the first and last squares and passes the others in order
+    private static boolean followsSquares(Move move, int[] squares) {
+        if (move.pathSquare(0) != squares[0] || move.pathSquare(move.getHops()) != squares[squares.length - 1]) {
+            return false;
+        }
+        int matched = 1;
+        for (int hop = 1; hop < move.getHops() && matched < squares.length - 1; hop++) {
+            if (move.pathSquare(hop) == squares[matched]) {
+                matched++;
+            }
+        }
+        return matched == squares.length - 1;
+    }
+
+    private IllegalArgumentException illegal(String token) {
+        return new IllegalArgumentException("Illegal move " + token + " in game " + (games + 1));
+    }
+
+    private static Move find(ArrayList<Move> legalMoves, int from, int target, boolean capture) {
+        for (Move move : legalMoves) {
+            if (move.fromSquare() == from && move.targetSquare() == target && move.isCapture() == capture) {
+                return move;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isResult(String token) {
+        return token.equals("*") || token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2")
+                || token.equals("2-0") || token.equals("0-2") || token.equals("1-1");
+    }
+
+    //Reads a result, from white's point of view as written by PdnWriter
+    private static int parseResult(String text, int current) {
+        switch (text) {
+            case "1-0":
+            case "2-0":
+                return GameRecord.WHITE_WINS;
+            case "0-1":
+            case "0-2":
+                return GameRecord.BLACK_WINS;
+            case "1/2-1/2":
+            case "1-1":
+                return GameRecord.DRAW;
+            default:
+                return current;
+        }
+    }
+
+    private int read() throws IOException {
+        int c = next == -2 ? in.read() : next;
+        next = in.read();
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (next == -2) {
+            next = in.read();
+        }
+        return next;
+    }
+
+    //Skips whitespace and returns the next character without reading it, -1 at the end of the input
+    private int skipSpace() throws IOException {
+        while (peek() != -1 && Character.isWhitespace(peek())) {
+            read();
+        }
+        return peek();
+    }
+
+    //Reads [Name "value"] and returns {name, value}
+    private String[] readTag() throws IOException {
+        read(); //[
+        StringBuilder name = new StringBuilder();
+        while (peek() != -1 && !Character.isWhitespace(peek()) && peek() != '"' && peek() != ']') {
+            name.append((char) read());
+        }
+        StringBuilder value = new StringBuilder();
+        skipSpace();
+        if (peek() == '"') {
+            read();
+            while (peek() != -1 && peek() != '"') {
+                int c = read();
+                value.append((char) (c == '\\' && peek() != -1 ? read() : c));
+            }
+            read();
+        }
+        while (peek() != -1 && read() != ']') {
+            //Skips anything else up to the end of the tag
+        }
+        return new String[]{name.toString(), value.toString()};
+    }
+
+    //Skips a {comment}, a ; comment to the end of the line or a (variation), which can hold further variations
+    private void skipComment(int open) throws IOException {
+        read();
+        if (open == ';') {
+            while (peek() != -1 && read() != '\n') {
+                //Skips to the end of the line
+            }
+        } else if (open == '{') {
+            while (peek() != -1 && read() != '}') {
+                //Skips to the closing brace
+            }
+        } else {
+            int depth = 1;
+            while (depth > 0 && peek() != -1) {
+                int c = read();
+                if (c == '{') {
+                    while (peek() != -1 && read() != '}') {
+                        //Braces inside a variation can hold brackets
+                    }
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+            }
+        }
+    }
+
+    //Reads everything up to the next whitespace or bracket
+    private String readToken() throws IOException {
+        StringBuilder token = new StringBuilder();
+        while (peek() != -1 && !Character.isWhitespace(peek()) && "[]{}();".indexOf(peek()) < 0) {
+            token.append((char) read());
+        }
+        if (token.length() == 0) {
+            token.append((char) read()); //A stray bracket, read on its own so reading carries on
+        }
+        return token.toString();
+    }
+}
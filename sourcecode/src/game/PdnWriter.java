@@ -0,0 +1,123 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Map;
+
+/*
+Writes games as PDN text, one after another on the same stream
+Each game is written as its tags, a FEN tag for the start position, then the moves and the result:
+    [Event "Club game"]
+    [Result "1-0"]
+    [FEN "W:W21,22,...:B1,2,..."]
+    1. 22-18 11-15 2. 18x11 11x4 8-11 1-0
+Squares use the standard numbering of Board.fromFen, steps are written from-to and captures fromxto,
+with a multi-jump written as every square of its path (for example 9x18x27), whether it was recorded as
+one compound move or as single hops that each carry on from where the last one landed
+A capture keeps the same player to move, so a move number is written each time the player who started has the move again
+Results are written from white's point of view: 1-0 white won, 0-1 black won, 1/2-1/2 a draw and * unknown
+ */
+public class PdnWriter implements Closeable {
+
+    private static final int LINE_LENGTH = 79;
+
+    private final Writer out;
+    private int column;
+
+    public PdnWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(GameRecord game) throws IOException {
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            writeTag(tag.getKey(), tag.getValue());
+        }
+        writeTag("Result", resultText(game.getResult()));
+        writeTag("FEN", game.getStartFen());
+        column = 0;
+        ArrayList<Move> moves = game.getMoves();
+        int startingPlayer = game.getStartFen().startsWith("W") ? 1 : 2;
+        int number = 0;
+        int lastPlayer = 0;
+        StringBuilder jump = new StringBuilder();
+        Move last = null;
+        for (Move move : moves) {
+            boolean continuesJump = last != null && last.isCapture() && move.isCapture() && !move.isCompound()
+                    && move.getPlayer() == last.getPlayer() && move.fromSquare() == last.pathSquare(last.getHops());
+            if (continuesJump) {
+                jump.append('x').append(Board.numberOfSquare(move.targetSquare()));
+            } else {
+                if (jump.length() > 0) {
+                    writeToken(jump.toString());
+                    jump.setLength(0);
+                }
+                if (move.getPlayer() == startingPlayer && lastPlayer != startingPlayer) {
+                    number++;
+                    writeToken(number + ".");
+                }
+                jump.append(moveText(move));
+            }
+            lastPlayer = move.getPlayer();
+            last = move;
+        }
+        if (jump.length() > 0) {
+            writeToken(jump.toString());
+        }
+        writeToken(resultText(game.getResult()));
+        out.write("\n\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    //Returns a move in PDN form, such as 22-18 or 9x18x27
+    static String moveText(Move move) {
+        StringBuilder text = new StringBuilder();
+        for (int hop = 0; hop <= move.getHops(); hop++) {
+            if (hop > 0) {
+                text.append(move.isCapture() ? 'x' : '-');
+            }
+            text.append(Board.numberOfSquare(move.pathSquare(hop)));
+        }
+        return text.toString();
+    }
+
+    static String resultText(int result) {
+        switch (result) {
+            case GameRecord.WHITE_WINS:
+                return "1-0";
+            case GameRecord.BLACK_WINS:
+                return "0-1";
+            case GameRecord.DRAW:
+                return "1/2-1/2";
+            default:
+                return "*";
+        }
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        out.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]\n");
+    }
+
+    //Writes a token of the move text, starting a new line before the line gets too long
+    private void writeToken(String token) throws IOException {
+        if (column > 0 && column + 1 + token.length() > LINE_LENGTH) {
+            out.write('\n');
+            column = 0;
+        }
+        if (column > 0) {
+            out.write(' ');
+            column++;
+        }
+        out.write(token);
+        column += token.length();
+    }
+}
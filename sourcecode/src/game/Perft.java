@@ -0,0 +1,174 @@
+package game;
+
+/*
+Perft counts the leaf positions of the full move tree to a fixed depth, to check the move generator against known
+counts and to measure its raw speed. A capture keeps the same player to move, as in makeMove, and counts as a ply.
+A position where either player has no pieces left is a finished game and has no moves.
+Run with: java game.Perft [depth] to check the reference counts, java game.Perft <depth> "<position>" to count a position,
+or java game.Perft <depth> <board size> to count the start position of a larger variant on VariantBoard
+Every 8x8 reference position is also counted on VariantBoard, which must agree with Board move for move
+ */
+public class Perft {
+
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+
+    /*
+    Reference positions and their leaf counts for depths 1, 2, 3...
+    The counts were produced by the original int[8][8] move generator
+     */
+    private static final String[] POSITIONS = {
+            "W:W21,22,23,24,25,26,27,28,29,30,31,32:B1,2,3,4,5,6,7,8,9,10,11,12", //setupGame with white to move
+            "B:W21,22,23,24,25,26,27,28,29,30,31,32:B1,2,3,4,5,6,7,8,9,10,11,12", //setupGame with black to move
+            "W:WK2,15,18,19,23,27:B7,10,11,14,K26",
+            "B:WK3,14,15,18,19,22:B10,11,12,K23,K31",
+            "W:W6,7,8,K30:BK4,25,26,27", //Men one step away from being crowned
+            "B:WK10,20,22,23,24,27,28:B8,12,15,16,K17,K21",
+    };
+    private static final long[][] COUNTS = {
+            {7, 49, 379, 2874, 23673, 191046, 1596619, 13210208},
+            {7, 49, 379, 2874, 23673, 191046, 1596619, 13210208},
+            {6, 41, 285, 2092, 15710, 121365, 946487},
+            {8, 64, 504, 3918, 32305, 262252, 2202548},
+            {7, 41, 248, 1564, 9401, 64891, 442596},
+            {9, 84, 712, 5817, 47682, 387420, 3152553},
+    };
+
+    /*
+    Leaf counts of the start position of each larger variant with white to move, for depths 1, 2, 3...
+    These are regression values recorded from VariantBoard itself, not counts from an independent reference:
+    no other program plays these rules on larger boards, so they only show that the counts have not changed
+     */
+    private static final int[] VARIANT_SIZES = {10, 12};
+    private static final long[][] VARIANT_COUNTS = {
+            {9, 81, 793, 7656, 79181, 806412, 8595885},
+            {11, 121, 1431, 16750, 208025, 2552682},
+    };
+
+    public static void main(String[] args) {
+        if (args.length == 2 && args[1].matches("\\d+")) {
+            Variant variant = Variant.forSize(Integer.parseInt(args[1]));
+            int depth = Integer.parseInt(args[0]);
+            for (int d = 1; d <= depth; d++) {
+                long start = System.nanoTime();
+                long leaves = perft(new VariantBoard(variant, WHITE), d);
+                report(d, leaves, System.nanoTime() - start);
+            }
+            return;
+        }
+        if (args.length == 2) {
+            Board board = Board.fromFen(args[1]);
+            int depth = Integer.parseInt(args[0]);
+            long start = System.nanoTime();
+            long leaves = divide(board, depth);
+            report(depth, leaves, System.nanoTime() - start);
+            return;
+        }
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+        boolean passed = true;
+        for (int i = 0; i < POSITIONS.length; i++) {
+            System.out.println(POSITIONS[i]);
+            for (int depth = 1; depth <= COUNTS[i].length && depth <= maxDepth; depth++) {
+                long start = System.nanoTime();
+                long leaves = perft(Board.fromFen(POSITIONS[i]), depth);
+                report(depth, leaves, System.nanoTime() - start);
+                if (leaves != COUNTS[i][depth - 1]) {
+                    System.out.println("    FAILED, expected " + COUNTS[i][depth - 1]);
+                    passed = false;
+                }
+                long variantLeaves = perft(VariantBoard.fromFen(Variant.CHECKERS, POSITIONS[i]), depth);
+                if (variantLeaves != COUNTS[i][depth - 1]) {
+                    System.out.println("    FAILED on VariantBoard with " + variantLeaves);
+                    passed = false;
+                }
+            }
+        }
+        for (int i = 0; i < VARIANT_SIZES.length; i++) {
+            Variant variant = Variant.forSize(VARIANT_SIZES[i]);
+            System.out.println(variant + " start position");
+            for (int depth = 1; depth <= VARIANT_COUNTS[i].length && depth <= maxDepth; depth++) {
+                long start = System.nanoTime();
+                long leaves = perft(new VariantBoard(variant, WHITE), depth);
+                report(depth, leaves, System.nanoTime() - start);
+                if (leaves != VARIANT_COUNTS[i][depth - 1]) {
+                    System.out.println("    FAILED, expected " + VARIANT_COUNTS[i][depth - 1]);
+                    passed = false;
+                }
+            }
+        }
+        System.out.println(passed ? "All perft counts match" : "Perft counts do not match");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    //Returns the number of leaf positions depth plies below the board's position
+    public static long perft(Board board, int depth) {
+        return perft(board, depth, new int[Math.max(depth, 1)][Board.MAX_MOVES]);
+    }
+
+    //Uses one move buffer per remaining ply so that counting does not allocate
+    private static long perft(Board board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (board.getPieceCount(WHITE) == 0 || board.getPieceCount(BLACK) == 0) {
+            return 0;
+        }
+        int[] moves = buffers[depth - 1];
+        int count = board.generateMoves(board.getCurrentPlayer(), moves);
+        if (depth == 1) {
+            return count;
+        }
+        long leaves = 0;
+        for (int i = 0; i < count; i++) {
+            board.doMove(moves[i]);
+            leaves += perft(board, depth - 1, buffers);
+            board.undoMove();
+        }
+        return leaves;
+    }
+
+    //The same count on a VariantBoard
+    public static long perft(VariantBoard board, int depth) {
+        return perft(board, depth, new int[Math.max(depth, 1)][board.getVariant().getMaxMoves()]);
+    }
+
+    private static long perft(VariantBoard board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (board.getPieceCount(WHITE) == 0 || board.getPieceCount(BLACK) == 0) {
+            return 0;
+        }
+        int[] moves = buffers[depth - 1];
+        int count = board.generateMoves(board.getCurrentPlayer(), moves);
+        if (depth == 1) {
+            return count;
+        }
+        long leaves = 0;
+        for (int i = 0; i < count; i++) {
+            board.doMove(moves[i]);
+            leaves += perft(board, depth - 1, buffers);
+            board.undoMove();
+        }
+        return leaves;
+    }
+
+    //Prints the leaf count below each root move, used to find which move a wrong count comes from
+    public static long divide(Board board, int depth) {
+        long leaves = 0;
+        for (Move move : board.getLegalMoves(board.getCurrentPlayer())) {
+            board.doMove(move);
+            long count = perft(board, depth - 1);
+            board.undoMove();
+            System.out.println("    " + move + ": " + count);
+            leaves += count;
+        }
+        return leaves;
+    }
+
+    private static void report(int depth, long leaves, long nanos) {
+        System.out.printf("  Depth %d: %d leaves in %.3fs (%.0f leaves/s)%n", depth, leaves, nanos / 1e9, leaves / (nanos / 1e9));
+    }
+}
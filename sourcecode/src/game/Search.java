@@ -0,0 +1,354 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+Negamax alpha-beta search over a single board, used by Engine for each iteration of iterative deepening
+The board is anything implementing SearchBoard, the 8x8 Board or a VariantBoard of a larger variant
+A capture does not change the player to move (see Board.makeMove), so the score of a capture is not negated
+and the capture does not use up any depth, which lets whole capture chains be searched before a leaf is scored
+Moves are searched in order of how likely they are to cause a cutoff:
+    1. the best move stored in the transposition table
+    2. captures, in the order they were generated
+    3. every other move, by its history score: the sum of depth * depth over every cutoff the move has caused
+History is kept across the iterations of a search, so each iteration is ordered by the one before
+There are no killer moves: a capture keeps the turn, so the same ply can belong to either player, and killers
+searched more nodes than history alone whether they were kept by ply or by player and ply
+ */
+class Search {
+
+    static final int WIN = 100000;
+    static final int MAX_PLY = 128;
+    static final int MATE_SCORE = WIN - 1000; //Scores beyond this are forced wins or losses, allowing for tablebase distances
+    private static final int INFINITY = WIN + 1;
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+    private static final int TIME_CHECK_NODES = 1024; //How often the clock is read when there is a deadline, a power of 2
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 29;
+    private static final int HISTORY_LIMIT = 1 << 20; //History scores are halved when one reaches this, keeping them below the captures
+
+    private SearchBoard board;
+    private int captureFlag; //See SearchBoard.getCaptureFlag
+    private int moveKeyMask; //The from and target squares of a packed move, as stored in the table
+    private TranspositionTable table;
+    private Tablebase tablebase;
+    private long nodeLimit;
+    private long deadline;
+    private boolean hasDeadline;
+    private long nodes;
+    private boolean aborted;
+    private volatile boolean stopped;
+    private int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+    private int[] pvLength = new int[MAX_PLY];
+    private int[][] moveBuffers = new int[MAX_PLY][0]; //Reused at every node so the search does not allocate, sized by useBoard
+    private int[][] orderScores = new int[MAX_PLY][0];
+    private int[][] history = new int[2][0]; //By player and move key (see SearchBoard.getMoveKeyBits)
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    Search(SearchBoard board, TranspositionTable table, long nodeLimit) {
+        this(board, table, nodeLimit, null);
+    }
+
+    /*
+    Positions with few enough pieces are looked up in the tablebase instead of being searched, if it is not null
+    The tablebase only holds 8x8 positions, so it is only used when the board is a Board
+     */
+    Search(SearchBoard board, TranspositionTable table, long nodeLimit, Tablebase tablebase) {
+        this.table = table;
+        this.nodeLimit = nodeLimit;
+        useBoard(board, tablebase);
+        clearOrdering();
+    }
+
+    /*
+    Readies a finished search to be run again on another board, keeping its buffers
+    Must not be called while the search is running
+     */
+    void reset(SearchBoard board, long nodeLimit, Tablebase tablebase) {
+        this.nodeLimit = nodeLimit;
+        useBoard(board, tablebase);
+        hasDeadline = false;
+        nodes = 0;
+        aborted = false;
+        stopped = false;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        clearOrdering();
+    }
+
+    //Sets the board to search, growing the move buffers and history if its moves need more room than the last board's
+    private void useBoard(SearchBoard board, Tablebase tablebase) {
+        this.board = board;
+        this.tablebase = board instanceof Board ? tablebase : null;
+        captureFlag = board.getCaptureFlag();
+        moveKeyMask = (1 << board.getMoveKeyBits()) - 1;
+        if (moveBuffers[0].length < board.getMaxMoves()) {
+            moveBuffers = new int[MAX_PLY][board.getMaxMoves()];
+            orderScores = new int[MAX_PLY][board.getMaxMoves()];
+        }
+        if (history[0].length <= moveKeyMask) {
+            history = new int[2][moveKeyMask + 1];
+        }
+    }
+
+    private void clearOrdering() {
+        for (int[] playerHistory : history) {
+            Arrays.fill(playerHistory, 0);
+        }
+    }
+
+    //Aborts the search once System.nanoTime reaches the deadline, checked every TIME_CHECK_NODES nodes
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+        this.hasDeadline = true;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    //Returns how many nodes, not counting the root, ended with a beta cutoff
+    long getCutoffs() {
+        return cutoffs;
+    }
+
+    //Returns how many of those cutoffs came from the first move searched, a measure of how good the move ordering is
+    long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    //Asks a search running on another thread to give up, the current iteration is then abandoned
+    void stop() {
+        stopped = true;
+    }
+
+    //Returns the principal variation found by the last call to searchRoot, for a search of a Board
+    ArrayList<Move> getPrincipalVariation() {
+        ArrayList<Move> pv = new ArrayList<>();
+        for (int i = 0; i < pvLength[0]; i++) {
+            pv.add(Move.of(pvTable[0][i]));
+        }
+        return pv;
+    }
+
+    //Returns the principal variation as the board's packed moves, for any board
+    int[] getPackedPrincipalVariation() {
+        return Arrays.copyOf(pvTable[0], pvLength[0]);
+    }
+
+    /*
+    Searches the given root moves to the given depth and returns the score of the best one
+    The moves are searched in the order given, so the previous iteration's best move should be first
+     */
+    int searchRoot(ArrayList<Move> rootMoves, int depth) {
+        int[] moves = new int[rootMoves.size()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = rootMoves.get(i).encode();
+        }
+        return searchRoot(moves, moves.length, depth);
+    }
+
+    //Same as searchRoot for the first count packed moves of rootMoves
+    int searchRoot(int[] rootMoves, int count, int depth) {
+        int alpha = -INFINITY;
+        pvLength[0] = 0;
+        for (int i = 0; i < count; i++) {
+            int move = rootMoves[i];
+            int score = searchMove(move, depth, 0, alpha, INFINITY);
+            if (aborted) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                updatePrincipalVariation(0, move);
+            }
+        }
+        return alpha;
+    }
+
+    /*
+    Returns the score of the position for the player to move, searched to the given depth
+    A player with no legal moves has lost and a player whose opponent has no pieces has won,
+    the score is adjusted by ply so that quicker wins are preferred
+    Positions in the tablebase are scored from it exactly, with the distance to the end of the game added to ply
+    Positions already searched deeply enough are answered from the transposition table,
+    otherwise the stored best move is searched first
+     */
+    private int alphaBeta(int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = 0;
+        nodes++;
+        if (stopped || (nodeLimit > 0 && nodes >= nodeLimit)
+                || (hasDeadline && (nodes & (TIME_CHECK_NODES - 1)) == 0 && System.nanoTime() - deadline >= 0)) {
+            aborted = true;
+            return 0;
+        }
+        int player = board.getCurrentPlayer();
+        if (board.getPieceCount(player == WHITE ? BLACK : WHITE) == 0) {
+            return WIN - ply; //The last capture took the opponent's final piece
+        }
+        if (tablebase != null && board.getPieceCount(WHITE) + board.getPieceCount(BLACK) <= tablebase.getMaxPieces()) {
+            int probe = tablebase.probe((Board) board);
+            if (probe != Tablebase.NOT_FOUND) {
+                int result = Tablebase.getResult(probe);
+                if (result == Tablebase.WIN) {
+                    return WIN - ply - Tablebase.getDistance(probe);
+                }
+                return result == Tablebase.LOSS ? -WIN + ply + Tablebase.getDistance(probe) : 0;
+            }
+        }
+        long key = board.getHash();
+        long entry = table.probe(key);
+        if (entry != 0 && TranspositionTable.getDepth(entry) >= depth) {
+            int score = fromTable(TranspositionTable.getScore(entry), ply);
+            int bound = TranspositionTable.getBound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && score >= beta)
+                    || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                return score;
+            }
+        }
+        int[] moves = moveBuffers[ply];
+        int count = board.generateMoves(player, moves);
+        if (count == 0) {
+            return -WIN + ply;
+        }
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return board.evaluate(player);
+        }
+        int[] scores = orderScores[ply];
+        scoreMoves(moves, scores, count, player, entry != 0 ? TranspositionTable.getMove(entry) : TranspositionTable.NO_MOVE);
+        int originalAlpha = alpha;
+        int bestMove = TranspositionTable.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(moves, scores, i, count);
+            int score = searchMove(move, depth, ply, alpha, beta);
+            if (aborted) {
+                return 0;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move & moveKeyMask;
+                updatePrincipalVariation(ply, move);
+                if (alpha >= beta) {
+                    cutoffs++;
+                    if (i == 0) {
+                        firstMoveCutoffs++;
+                    }
+                    if ((move & captureFlag) == 0) {
+                        rememberCutoff(move, depth, player);
+                    }
+                    break;
+                }
+            }
+        }
+        int bound = alpha >= beta ? TranspositionTable.LOWER : alpha > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(key, depth, bound, toTable(alpha, ply), bestMove);
+        return alpha;
+    }
+
+    //Gives each move its ordering score, see the class comment for the order
+    private void scoreMoves(int[] moves, int[] scores, int count, int player, int hashMove) {
+        int[] playerHistory = history[player - 1];
+        for (int i = 0; i < count; i++) {
+            int code = moves[i] & moveKeyMask;
+            if (code == hashMove) {
+                scores[i] = HASH_MOVE_SCORE;
+            } else if ((moves[i] & captureFlag) != 0) {
+                scores[i] = CAPTURE_SCORE;
+            } else {
+                scores[i] = playerHistory[code];
+            }
+        }
+    }
+
+    /*
+    Swaps the highest scoring move from index on into place and returns it, the first of equal scores is taken
+    Picking one move at a time is cheaper than sorting, as most nodes that cut off do so within the first few moves
+     */
+    private static int nextMove(int[] moves, int[] scores, int index, int count) {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        if (best != index) {
+            int move = moves[best];
+            int score = scores[best];
+            System.arraycopy(moves, index, moves, index + 1, best - index);
+            System.arraycopy(scores, index, scores, index + 1, best - index);
+            moves[index] = move;
+            scores[index] = score;
+        }
+        return moves[index];
+    }
+
+    //Adds to the history score of a quiet move that caused a cutoff
+    private void rememberCutoff(int move, int depth, int player) {
+        int code = move & moveKeyMask;
+        int[] playerHistory = history[player - 1];
+        playerHistory[code] += depth * depth;
+        if (playerHistory[code] >= HISTORY_LIMIT) {
+            for (int i = 0; i < playerHistory.length; i++) {
+                playerHistory[i] >>= 1;
+            }
+        }
+    }
+
+    /*
+    Win and loss scores depend on the ply they are found at, so they are stored relative to the current position
+    and converted back to the distance from the root when they are read
+     */
+    private static int toTable(int score, int ply) {
+        if (score >= MATE_SCORE) {
+            return score + ply;
+        }
+        if (score <= -MATE_SCORE) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE_SCORE) {
+            return score - ply;
+        }
+        if (score <= -MATE_SCORE) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /*
+    Plays a move, searches the resulting position and takes the move back
+    After a capture the same player moves again, so the child is searched with the same window and sign
+     */
+    private int searchMove(int move, int depth, int ply, int alpha, int beta) {
+        int score;
+        board.doMove(move);
+        if ((move & captureFlag) != 0) {
+            score = alphaBeta(depth, ply + 1, alpha, beta);
+        } else {
+            score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha);
+        }
+        board.undoMove();
+        return score;
+    }
+
+    //Stores a move followed by the child's principal variation as the line for this ply
+    private void updatePrincipalVariation(int ply, int move) {
+        pvTable[ply][0] = move;
+        int childLength = ply + 1 < MAX_PLY ? pvLength[ply + 1] : 0;
+        for (int i = 0; i < childLength; i++) {
+            pvTable[ply][i + 1] = pvTable[ply + 1][i];
+        }
+        pvLength[ply] = childLength + 1;
+    }
+}
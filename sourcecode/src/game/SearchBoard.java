@@ -0,0 +1,34 @@
+package game;
+
+/*
+The part of a board that Search needs, so the same alpha-beta search runs on Board and on VariantBoard
+Moves are the packed ints written by generateMoves. The low getMoveKeyBits bits of a packed move hold its from and
+target squares, which is what the transposition table and the history scores remember a move by
+ */
+interface SearchBoard {
+
+    int getCurrentPlayer();
+
+    int getPieceCount(int player);
+
+    //A hash of the position and the player to move, see Zobrist
+    long getHash();
+
+    int generateMoves(int player, int[] buffer);
+
+    void doMove(int move);
+
+    void undoMove();
+
+    //The score of the position from the point of view of the given player
+    int evaluate(int player);
+
+    //Size needed for a generateMoves buffer
+    int getMaxMoves();
+
+    //The bit set in a packed move that is a capture
+    int getCaptureFlag();
+
+    //How many of the low bits of a packed move identify it, at most 14 (see TranspositionTable)
+    int getMoveKeyBits();
+}
@@ -0,0 +1,115 @@
+package game;
+
+/*
+Checks that Engine searches the larger variants correctly through VariantBoard
+Every 8x8 position is searched on Board and on VariantBoard, which must agree on the score and the best move,
+so the search sees the same game through either board. Positions on 10x10 and 12x12 are then searched and must come
+back with a legal best move, an unchanged board and a hash and evaluation that match the position built from scratch
+Run with: java game.SearchCheck [depth]
+ */
+public class SearchCheck {
+
+    private static final String[] POSITIONS = {
+            "B:W21,22,23,24,25,26,27,28,29,30,31,32:B1,2,3,4,5,6,7,8,9,10,11,12",
+            "W:WK2,15,18,19,23,27:B7,10,11,14,K26",
+            "B:WK3,14,15,18,19,22:B10,11,12,K23,K31",
+            "W:W6,7,8,K30:BK4,25,26,27",
+            "B:WK10,20,22,23,24,27,28:B8,12,15,16,K17,K21",
+    };
+    /*
+    Positions of the larger variants with the move the search must find, or null for any legal move
+    On 10x10 the white man on 33 can take the black man on 29 for free
+     */
+    private static final int[] VARIANT_SIZES = {10, 10, 12, 12};
+    private static final String[] VARIANT_POSITIONS = {
+            "W:W31,32,33,34,35,36,37,38,39,40,41,42,43,44,45,46,47,48,49,50:B1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20",
+            "W:W33,46:B5,29",
+            "W:W43,44,45,46,47,48,49,50,51,52,53,54,55,56,57,58,59,60,61,62,63,64,65,66,67,68,69,70,71,72"
+                    + ":B1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24,25,26,27,28,29,30",
+            "B:W40,41,K60:B20,25,K33",
+    };
+    private static final String[] VARIANT_BEST_MOVES = {null, "33x24", null, null};
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        boolean passed = true;
+        for (String fen : POSITIONS) {
+            SearchResult expected = new Engine(depth, 0).search(Board.fromFen(fen));
+            VariantBoard board = VariantBoard.fromFen(Variant.CHECKERS, fen);
+            SearchResult result = new Engine(depth, 0).search(board);
+            String expectedMove = PdnWriter.moveText(expected.getBestMove());
+            String move = board.moveText(result.getPackedVariation()[0]);
+            System.out.println(fen + ": " + move + " scores " + result.getScore());
+            if (result.getScore() != expected.getScore() || !move.equals(expectedMove)) {
+                System.out.println("    FAILED, Board found " + expectedMove + " scoring " + expected.getScore());
+                passed = false;
+            }
+        }
+        for (int i = 0; i < VARIANT_POSITIONS.length; i++) {
+            Variant variant = Variant.forSize(VARIANT_SIZES[i]);
+            VariantBoard board = VariantBoard.fromFen(variant, VARIANT_POSITIONS[i]);
+            long start = System.nanoTime();
+            SearchResult result = new Engine(depth, 0).search(board);
+            long time = System.nanoTime() - start;
+            int[] pv = result.getPackedVariation();
+            String move = pv.length > 0 ? board.moveText(pv[0]) : "none";
+            System.out.println(variant + " " + VARIANT_POSITIONS[i] + ": " + move + " scores " + result.getScore()
+                    + " at depth " + result.getDepth() + ", " + result.getNodes() + " nodes in " + time / 1000000 + "ms");
+            if (result.getDepth() != depth || !isLegal(board, pv.length > 0 ? pv[0] : -1)) {
+                System.out.println("    FAILED, no legal move from a full search");
+                passed = false;
+            }
+            if (VARIANT_BEST_MOVES[i] != null && !move.equals(VARIANT_BEST_MOVES[i])) {
+                System.out.println("    FAILED, expected " + VARIANT_BEST_MOVES[i]);
+                passed = false;
+            }
+            VariantBoard fresh = VariantBoard.fromFen(variant, VARIANT_POSITIONS[i]);
+            if (!board.toFen().equals(VARIANT_POSITIONS[i]) || board.getHash() != fresh.getHash()
+                    || board.evaluate(1) != fresh.evaluate(1)) {
+                System.out.println("    FAILED, the search left the board changed");
+                passed = false;
+            }
+            if (!keepsHashAndScore(board, Math.min(depth, 4))) {
+                System.out.println("    FAILED, the hash or evaluation drifted from the position's own");
+                passed = false;
+            }
+        }
+        System.out.println(passed ? "All searches match" : "Search checks failed");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean isLegal(VariantBoard board, int move) {
+        int[] moves = new int[board.getMaxMoves()];
+        int count = board.generateMoves(board.getCurrentPlayer(), moves);
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Plays every line to the given depth and compares the kept up to date hash and evaluation with a rebuilt board
+    private static boolean keepsHashAndScore(VariantBoard board, int depth) {
+        VariantBoard rebuilt = VariantBoard.fromFen(board.getVariant(), board.toFen());
+        if (rebuilt.getHash() != board.getHash() || rebuilt.evaluate(1) != board.evaluate(1)) {
+            return false;
+        }
+        if (depth == 0 || board.getPieceCount(1) == 0 || board.getPieceCount(2) == 0) {
+            return true;
+        }
+        int[] moves = new int[board.getMaxMoves()];
+        int count = board.generateMoves(board.getCurrentPlayer(), moves);
+        for (int i = 0; i < count; i++) {
+            board.doMove(moves[i]);
+            boolean kept = keepsHashAndScore(board, depth - 1);
+            board.undoMove();
+            if (!kept) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package game;
+
+/*
+A player that picks moves by searching, so that Tournament can play the alpha-beta Engine and MctsEngine
+against each other
+ */
+public interface SearchEngine {
+
+    //Searches the board for the current player, leaving the board as it was found
+    SearchResult search(Board board);
+
+    //Stops a search running on another thread, which returns the best move it has so far
+    void stop();
+
+    //Forgets anything kept from earlier searches, called before each new game
+    void newGame();
+}
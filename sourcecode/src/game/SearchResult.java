@@ -0,0 +1,102 @@
+package game;
+
+import java.util.List;
+
+/*
+The outcome of an engine search: the move to play, its score from the point of view of the player to move,
+the depth of the last completed iteration, the number of positions visited and the expected line of play
+A search of a VariantBoard has no Move objects: getBestMove is null and the line is given as that board's packed moves
+by getPackedVariation instead, empty when there was no legal move
+ */
+public class SearchResult {
+
+    private Move bestMove;
+    private int score;
+    private int depth;
+    private long nodes;
+    private List<Move> principalVariation;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private int[] packedVariation = new int[0];
+    private boolean unfinished;
+
+    public SearchResult(Move bestMove, int score, int depth, long nodes, List<Move> principalVariation) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.principalVariation = principalVariation;
+    }
+
+    public Move getBestMove() {
+        return bestMove;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public List<Move> getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    //Returns the principal variation of a VariantBoard search as that board's packed moves, empty for a Board search
+    public int[] getPackedVariation() {
+        return packedVariation;
+    }
+
+    void setPackedVariation(int[] packedVariation) {
+        this.packedVariation = packedVariation;
+    }
+
+    /*
+    Returns whether the search was stopped before it finished a single iteration, in which case the best move is
+    only the first legal move and the score means nothing. A book move or a finished game also has a depth of 0,
+    but those answers are complete
+     */
+    public boolean isUnfinished() {
+        return unfinished;
+    }
+
+    void setUnfinished(boolean unfinished) {
+        this.unfinished = unfinished;
+    }
+
+    //Returns how many nodes of the main search ended with a beta cutoff, 0 for a result that was not searched
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /*
+    Returns the share of cutoffs that came from the first move searched, between 0 and 1
+    With good move ordering this is usually above 0.9
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    void setCutoffs(long cutoffs, long firstMoveCutoffs) {
+        this.cutoffs = cutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+    }
+
+    /*
+    Allows .toString() to be called on a SearchResult resulting in a relevant output
+     */
+    @Override
+    public String toString() {
+        return "Best move: " + bestMove + " Score: " + score + " Depth: " + depth + " Nodes: " + nodes + " PV: " + principalVariation;
+    }
+}
@@ -0,0 +1,151 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/*
+Endgame tablebase lookup, giving the perfect result of any position with few enough pieces
+Each material signature has two files written by TablebaseBuilder, named after the signature (see TablebaseIndex):
+    <signature>.wdl - 2 bits per position: DRAW, WIN or LOSS for the player to move (INVALID for unused indexes)
+    <signature>.dtw - 1 byte per position: plies until the game is won or lost, capped at 255
+The files are memory-mapped, so a probe is a couple of reads from the page cache and nothing is loaded up front
+ */
+public class Tablebase {
+
+    public static final int DRAW = 0;
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+    static final int INVALID = 3;
+    public static final int NOT_FOUND = -1;
+    static final int MAX_SUPPORTED_PIECES = 15;
+    private static final int WHITE_CROWN = 0x0000000F;
+    private static final int BLACK_CROWN = 0xF0000000;
+
+    //Tables indexed by signature code, 4 bits for each of white men, white kings, black men and black kings
+    private final Table[] tables = new Table[1 << 16];
+    private int maxPieces;
+
+    //The mapped files of one signature
+    private static class Table {
+        final TablebaseIndex index;
+        final MappedByteBuffer results;
+        final MappedByteBuffer distances;
+
+        Table(TablebaseIndex index, MappedByteBuffer results, MappedByteBuffer distances) {
+            this.index = index;
+            this.results = results;
+            this.distances = distances;
+        }
+    }
+
+    private Tablebase() {
+    }
+
+    /*
+    Maps every tablebase file in the directory
+    The tablebase covers positions up to the largest piece count for which every signature is present
+     */
+    public static Tablebase open(File directory) throws IOException {
+        Tablebase tablebase = new Tablebase();
+        int pieces = 2;
+        while (pieces <= MAX_SUPPORTED_PIECES) {
+            boolean complete = true;
+            for (TablebaseIndex index : signatures(pieces)) {
+                File results = new File(directory, index.getName() + ".wdl");
+                File distances = new File(directory, index.getName() + ".dtw");
+                if (!results.exists() || !distances.exists()) {
+                    complete = false;
+                    break;
+                }
+                tablebase.add(index, map(results), map(distances));
+            }
+            if (!complete) {
+                break;
+            }
+            tablebase.maxPieces = pieces;
+            pieces++;
+        }
+        return tablebase;
+    }
+
+    //Returns the largest number of pieces, counting both players, for which every position can be probed
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /*
+    Looks up the position on the board
+    Returns NOT_FOUND if there is no table for the position's material, for example when one player has no pieces,
+    otherwise the result for the player to move packed with the distance, read with getResult and getDistance
+     */
+    public int probe(Board board) {
+        return probe(board.getWhiteBits(), board.getBlackBits(), board.getKingBits(), board.getCurrentPlayer());
+    }
+
+    public static int getResult(int probe) {
+        return probe & 3;
+    }
+
+    public static int getDistance(int probe) {
+        return probe >>> 2;
+    }
+
+    int probe(int whiteBits, int blackBits, int kingBits, int player) {
+        int whiteMen = Integer.bitCount(whiteBits & ~kingBits);
+        int whiteKings = Integer.bitCount(whiteBits & kingBits);
+        int blackMen = Integer.bitCount(blackBits & ~kingBits);
+        int blackKings = Integer.bitCount(blackBits & kingBits);
+        if ((whiteMen | whiteKings | blackMen | blackKings) > 15 || (whiteBits & ~kingBits & WHITE_CROWN) != 0 || (blackBits & ~kingBits & BLACK_CROWN) != 0) {
+            return NOT_FOUND; //Too many pieces, or men on the row where they would have been crowned
+        }
+        Table table = tables[code(whiteMen, whiteKings, blackMen, blackKings)];
+        if (table == null) {
+            return NOT_FOUND;
+        }
+        long index = table.index.index(whiteBits, blackBits, kingBits, player);
+        int result = (table.results.get((int) (index >>> 2)) >>> ((index & 3) * 2)) & 3;
+        if (result == INVALID) {
+            return NOT_FOUND;
+        }
+        return result | (table.distances.get((int) index) & 0xFF) << 2;
+    }
+
+    //Used by TablebaseBuilder to make a newly written signature available to the ones built after it
+    void add(TablebaseIndex index, MappedByteBuffer results, MappedByteBuffer distances) {
+        tables[code(index.whiteMen, index.whiteKings, index.blackMen, index.blackKings)] = new Table(index, results, distances);
+    }
+
+    private static int code(int whiteMen, int whiteKings, int blackMen, int blackKings) {
+        return whiteMen | whiteKings << 4 | blackMen << 8 | blackKings << 12;
+    }
+
+    /*
+    Returns every signature with the given total number of pieces where both players have at least one piece,
+    ordered so that a signature comes after every signature a promotion can lead to (fewer men first)
+     */
+    static ArrayList<TablebaseIndex> signatures(int pieces) {
+        ArrayList<TablebaseIndex> list = new ArrayList<>();
+        for (int men = 0; men <= pieces; men++) {
+            for (int whiteMen = 0; whiteMen <= men; whiteMen++) {
+                int blackMen = men - whiteMen;
+                for (int whiteKings = 0; whiteKings <= pieces - men; whiteKings++) {
+                    int blackKings = pieces - men - whiteKings;
+                    if (whiteMen + whiteKings > 0 && blackMen + blackKings > 0 && whiteMen <= 28 && blackMen <= 28) {
+                        list.add(new TablebaseIndex(whiteMen, whiteKings, blackMen, blackKings));
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
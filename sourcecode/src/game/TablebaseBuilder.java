@@ -0,0 +1,397 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+Builds the endgame tablebase files read by Tablebase, run with: java game.TablebaseBuilder <directory> <max pieces> [threads]
+Signatures are built from 2 pieces upwards. A capture always leads to a signature with fewer pieces and a promotion
+to one with fewer men, so every table a position can move into has already been built, apart from its own.
+Within a signature the only moves are steps without promotion, which pass the turn, and each signature is solved
+by retrograde analysis:
+    1. Every position's moves are generated once. Moves out of the signature are probed in the finished tables
+       and moves within it are counted. A position with no moves is lost in 0, one with a winning way out is won,
+       and one whose every move leaves the signature and loses is lost; these are the seeds.
+    2. Positions are resolved one distance at a time from a queue for each distance. When a position is resolved
+       its predecessors are found with Board.generateUnmoves: a loss makes each of them a win one ply further on,
+       and a win takes one from each one's count of moves still open, which at 0 makes it a loss one ply after
+       the longest of its moves.
+    3. Whatever is still unresolved when the queues run out is a draw.
+Distances come out as the shortest win and the longest loss, as Tablebase gives them, capped at 255.
+A capture keeps the same player to move, so the result after a capture is not flipped.
+Step 1 splits the index range between the threads and step 2 splits each queue, so a signature is solved
+on every core. Memory needed while building is about 10 bytes per position of the largest signature.
+ */
+public class TablebaseBuilder {
+
+    private static final int UNKNOWN = 0; //Same value as Tablebase.DRAW, so unresolved positions are written as draws
+    private static final int MAX_DISTANCE = 255;
+    /*
+    The state of a position while its signature is built, packed in an int:
+        bits 0 - 1   result, UNKNOWN until the position is resolved
+        bits 2 - 9   distance, once resolved
+        bits 10 - 17 moves within the signature not yet known to lose, or CANNOT_LOSE
+        bits 18 - 26 distance of the shortest win found so far, or NO_WIN
+     */
+    private static final int COUNT_SHIFT = 10;
+    private static final int WIN_SHIFT = 18;
+    private static final int CANNOT_LOSE = 0xFF; //A move is won or drawn, so the position is never lost
+    private static final int NO_WIN = 0x1FF;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Usage: java game.TablebaseBuilder <directory> <max pieces> [threads]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        build(new File(args[0]), Integer.parseInt(args[1]), threads);
+        Log.log(Log.INFO, String.format("Built in %.1fs", (System.nanoTime() - start) / 1e9));
+    }
+
+    //Same as build(File, int, int) with a thread for each processor
+    public static Tablebase build(File directory, int maxPieces) throws IOException {
+        return build(directory, maxPieces, Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+    Writes every signature with up to maxPieces pieces into the directory, skipping any that are already there
+    Each signature is logged at info level as it is finished. Returns the tablebase over the finished files
+     */
+    public static Tablebase build(File directory, int maxPieces, int threads) throws IOException {
+        if (maxPieces < 2 || maxPieces > Tablebase.MAX_SUPPORTED_PIECES) {
+            throw new IllegalArgumentException("Tablebases can be built for 2 to " + Tablebase.MAX_SUPPORTED_PIECES + " pieces");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tablebase-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Tablebase tablebase = Tablebase.open(directory);
+            for (int pieces = 2; pieces <= maxPieces; pieces++) {
+                for (TablebaseIndex index : Tablebase.signatures(pieces)) {
+                    File results = new File(directory, index.getName() + ".wdl");
+                    File distances = new File(directory, index.getName() + ".dtw");
+                    if (!results.exists() || !distances.exists()) {
+                        long start = System.nanoTime();
+                        int deepest = new SignatureBuild(index, tablebase, pool, threads).solve(results, distances);
+                        if (Log.isEnabled(Log.INFO)) {
+                            Log.log(Log.INFO, String.format("%s: %d positions, longest distance %d, %.1fs",
+                                    index.getName(), index.size, deepest, (System.nanoTime() - start) / 1e9));
+                        }
+                    }
+                    tablebase.add(index, Tablebase.map(results), Tablebase.map(distances));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return Tablebase.open(directory);
+    }
+
+    //The positions resolved at one distance, waiting for their predecessors to be updated
+    private static final class Queue {
+        int[] items = new int[16];
+        int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        void addAll(Queue other) {
+            if (size + other.size > items.length) {
+                items = Arrays.copyOf(items, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.items, 0, items, size, other.size);
+            size += other.size;
+        }
+    }
+
+    //What one thread found: the positions it queued at each distance
+    private static final class Queues {
+        final Queue[] byDistance = new Queue[MAX_DISTANCE + 1];
+
+        void add(int distance, int position) {
+            if (byDistance[distance] == null) {
+                byDistance[distance] = new Queue();
+            }
+            byDistance[distance].add(position);
+        }
+    }
+
+    //The working state of one signature while it is solved
+    private static final class SignatureBuild {
+        final TablebaseIndex index;
+        final Tablebase tablebase;
+        final ExecutorService pool;
+        final int threads;
+        final int size;
+        final AtomicIntegerArray state;
+        final byte[] longestLoss; //The longest loss through moves out of the signature, for positions that may be lost
+        final Queue[] queues = new Queue[MAX_DISTANCE + 1];
+
+        SignatureBuild(TablebaseIndex index, Tablebase tablebase, ExecutorService pool, int threads) {
+            if (index.size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Signature " + index.getName() + " is too large to build in memory");
+            }
+            this.index = index;
+            this.tablebase = tablebase;
+            this.pool = pool;
+            this.threads = threads;
+            size = (int) index.size;
+            state = new AtomicIntegerArray(size);
+            longestLoss = new byte[size];
+        }
+
+        //Solves the signature and writes its two files, returns the longest distance found
+        int solve(File resultFile, File distanceFile) throws IOException {
+            List<Callable<Queues>> seeds = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int from = (int) ((long) size * t / threads);
+                final int to = (int) ((long) size * (t + 1) / threads);
+                seeds.add(() -> seed(from, to));
+            }
+            merge(runAll(seeds));
+
+            int deepest = 0;
+            for (int distance = 0; distance <= MAX_DISTANCE; distance++) {
+                //At the cap a resolved position can queue more positions at the same distance, so the queue is rerun
+                while (queues[distance] != null) {
+                    final Queue queue = queues[distance];
+                    final int resolvedDistance = distance;
+                    queues[distance] = null;
+                    deepest = distance;
+                    List<Callable<Queues>> steps = new ArrayList<>();
+                    for (int t = 0; t < threads; t++) {
+                        final int from = (int) ((long) queue.size * t / threads);
+                        final int to = (int) ((long) queue.size * (t + 1) / threads);
+                        steps.add(() -> resolve(queue, from, to, resolvedDistance));
+                    }
+                    merge(runAll(steps));
+                }
+            }
+            write(resultFile, distanceFile);
+            return deepest;
+        }
+
+        /*
+        Step 1 for the indexes from - to: generates each position's moves, probes the ones that leave the signature
+        and counts the others, then sets the position's state and queues it if it is already decided
+         */
+        private Queues seed(int from, int to) {
+            Queues found = new Queues();
+            int[] position = new int[4];
+            int[] moves = new int[Board.MAX_MOVES];
+            Board board = new Board();
+            for (int i = from; i < to; i++) {
+                if (!index.position(i, position)) {
+                    state.set(i, Tablebase.INVALID);
+                    continue;
+                }
+                int player = position[3];
+                int opponent = player == TablebaseIndex.WHITE ? TablebaseIndex.BLACK : TablebaseIndex.WHITE;
+                board.setPosition(position[0], position[1], position[2], player);
+                int count = board.generateMoves(player, moves);
+                int within = 0;
+                int shortestWin = Integer.MAX_VALUE;
+                int longest = 0;
+                boolean canLose = true;
+                for (int m = 0; m < count; m++) {
+                    board.doMove(moves[m]);
+                    int white = board.getWhiteBits();
+                    int black = board.getBlackBits();
+                    int kings = board.getKingBits();
+                    if (board.getPieceCount(opponent) == 0) {
+                        shortestWin = 1; //The capture took the opponent's last piece
+                    } else if (Integer.bitCount(white & ~kings) == index.whiteMen && Integer.bitCount(black & ~kings) == index.blackMen
+                            && Integer.bitCount(white | black) == index.getPieces()) {
+                        within++;
+                    } else {
+                        int probe = tablebase.probe(white, black, kings, board.getCurrentPlayer());
+                        int result = probe == Tablebase.NOT_FOUND ? UNKNOWN : Tablebase.getResult(probe);
+                        if (board.getCurrentPlayer() != player && result != UNKNOWN) {
+                            result = result == Tablebase.WIN ? Tablebase.LOSS : Tablebase.WIN; //The result was for the opponent
+                        }
+                        if (result == Tablebase.WIN) {
+                            shortestWin = Math.min(shortestWin, Tablebase.getDistance(probe) + 1);
+                        } else if (result == Tablebase.LOSS) {
+                            longest = Math.max(longest, Tablebase.getDistance(probe) + 1);
+                        } else {
+                            canLose = false;
+                        }
+                    }
+                    board.undoMove();
+                }
+                if (shortestWin != Integer.MAX_VALUE) {
+                    int distance = Math.min(shortestWin, MAX_DISTANCE);
+                    state.set(i, CANNOT_LOSE << COUNT_SHIFT | distance << WIN_SHIFT);
+                    found.add(distance, i);
+                } else if (!canLose) {
+                    state.set(i, CANNOT_LOSE << COUNT_SHIFT | NO_WIN << WIN_SHIFT);
+                } else {
+                    state.set(i, within << COUNT_SHIFT | NO_WIN << WIN_SHIFT);
+                    longestLoss[i] = (byte) Math.min(longest, MAX_DISTANCE);
+                    if (within == 0) {
+                        found.add(Math.min(longest, MAX_DISTANCE), i); //Lost, in 0 if there are no moves at all
+                    }
+                }
+            }
+            return found;
+        }
+
+        /*
+        Step 2 for the queued positions from - to: resolves each one at the distance unless it already is,
+        then passes the result back to the positions that step into it
+        A queued position whose count of open moves is 0 is lost, any other was queued as a win
+         */
+        private Queues resolve(Queue queue, int from, int to, int distance) {
+            Queues found = new Queues();
+            int[] position = new int[4];
+            int[] unmoves = new int[Board.MAX_MOVES];
+            Board board = new Board();
+            int next = Math.min(distance + 1, MAX_DISTANCE);
+            for (int q = from; q < to; q++) {
+                int i = queue.items[q];
+                int result;
+                while (true) {
+                    int current = state.get(i);
+                    if ((current & 3) != UNKNOWN) {
+                        result = UNKNOWN; //Already resolved at a shorter distance, or by another thread
+                        break;
+                    }
+                    result = (current >>> COUNT_SHIFT & 0xFF) == 0 ? Tablebase.LOSS : Tablebase.WIN;
+                    if (state.compareAndSet(i, current, current | result | distance << 2)) {
+                        break;
+                    }
+                }
+                if (result == UNKNOWN) {
+                    continue;
+                }
+                index.position(i, position);
+                int mover = position[3] == TablebaseIndex.WHITE ? TablebaseIndex.BLACK : TablebaseIndex.WHITE;
+                board.setPosition(position[0], position[1], position[2], position[3]);
+                int count = board.generateUnmoves(mover, unmoves);
+                for (int m = 0; m < count; m++) {
+                    int origin = 1 << Move.getFromSquare(unmoves[m]);
+                    int target = 1 << Move.getTargetSquare(unmoves[m]);
+                    int white = position[0];
+                    int black = position[1];
+                    if (mover == TablebaseIndex.WHITE) {
+                        white = white & ~target | origin;
+                    } else {
+                        black = black & ~target | origin;
+                    }
+                    int kings = (position[2] & target) != 0 ? position[2] & ~target | origin : position[2];
+                    int predecessor = (int) index.index(white, black, kings, mover);
+                    if (result == Tablebase.LOSS) {
+                        if (offerWin(predecessor, next)) {
+                            found.add(next, predecessor);
+                        }
+                    } else if (closeMove(predecessor)) {
+                        found.add(Math.max(next, longestLoss[predecessor] & 0xFF), predecessor);
+                    }
+                }
+            }
+            return found;
+        }
+
+        //Records a win at the distance for an unresolved position, returns true if it is shorter than any found before
+        private boolean offerWin(int i, int distance) {
+            while (true) {
+                int current = state.get(i);
+                if ((current & 3) != UNKNOWN || (current >>> WIN_SHIFT) <= distance) {
+                    return false;
+                }
+                if (state.compareAndSet(i, current, current & ~(NO_WIN << WIN_SHIFT) | distance << WIN_SHIFT)) {
+                    return true;
+                }
+            }
+        }
+
+        //Takes one from an unresolved position's count of open moves, returns true if that was its last one
+        private boolean closeMove(int i) {
+            while (true) {
+                int current = state.get(i);
+                int open = current >>> COUNT_SHIFT & 0xFF;
+                if ((current & 3) != UNKNOWN || open == CANNOT_LOSE) {
+                    return false;
+                }
+                if (state.compareAndSet(i, current, current - (1 << COUNT_SHIFT))) {
+                    return open == 1;
+                }
+            }
+        }
+
+        private List<Queues> runAll(List<Callable<Queues>> tasks) throws IOException {
+            List<Queues> done = new ArrayList<>();
+            try {
+                for (Future<Queues> future : pool.invokeAll(tasks)) {
+                    done.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Building " + index.getName() + " was interrupted");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Building " + index.getName() + " failed", e.getCause());
+            }
+            return done;
+        }
+
+        private void merge(List<Queues> found) {
+            for (Queues threadQueues : found) {
+                for (int distance = 0; distance <= MAX_DISTANCE; distance++) {
+                    Queue queue = threadQueues.byDistance[distance];
+                    if (queue == null) {
+                        continue;
+                    }
+                    if (queues[distance] == null) {
+                        queues[distance] = queue;
+                    } else {
+                        queues[distance].addAll(queue);
+                    }
+                }
+            }
+        }
+
+        private void write(File resultFile, File distanceFile) throws IOException {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(resultFile))) {
+                for (int i = 0; i < size; i += 4) {
+                    int packed = 0;
+                    for (int j = 0; j < 4 && i + j < size; j++) {
+                        packed |= (state.get(i + j) & 3) << (j * 2);
+                    }
+                    out.write(packed);
+                }
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(distanceFile))) {
+                for (int i = 0; i < size; i++) {
+                    int current = state.get(i);
+                    out.write((current & 3) == Tablebase.INVALID ? 0 : current >>> 2 & 0xFF);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package game;
+
+/*
+Perfect combinatorial index for one material signature of the endgame tablebase:
+a fixed number of white men, white kings, black men and black kings
+The pieces are placed group by group and each group is ranked as a combination of the squares still free:
+    white men  - squares 4 - 31 (a white man on row 0 would already be a king)
+    black men  - any square not holding a white man
+    white kings - any square still free
+    black kings - any square still free
+index = (((white men rank * black men count + black men rank) * white king count + white king rank)
+        * black king count + black king rank) * 2 + (1 if black is to move)
+The only unused indexes are those with a black man on row 7, which cannot occur in a game
+ */
+final class TablebaseIndex {
+
+    static final int WHITE = 1;
+    static final int BLACK = 2;
+    private static final int WHITE_MEN_SQUARES = 0xFFFFFFF0;
+    private static final int BLACK_CROWN = 0xF0000000;
+    private static final long[][] BINOMIAL = new long[33][33];
+
+    static {
+        for (int n = 0; n <= 32; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    final int whiteMen;
+    final int whiteKings;
+    final int blackMen;
+    final int blackKings;
+    private final long blackMenCount;
+    private final long whiteKingCount;
+    private final long blackKingCount;
+    final long size;
+
+    TablebaseIndex(int whiteMen, int whiteKings, int blackMen, int blackKings) {
+        this.whiteMen = whiteMen;
+        this.whiteKings = whiteKings;
+        this.blackMen = blackMen;
+        this.blackKings = blackKings;
+        blackMenCount = BINOMIAL[32 - whiteMen][blackMen];
+        whiteKingCount = BINOMIAL[32 - whiteMen - blackMen][whiteKings];
+        blackKingCount = BINOMIAL[32 - whiteMen - blackMen - whiteKings][blackKings];
+        size = BINOMIAL[28][whiteMen] * blackMenCount * whiteKingCount * blackKingCount * 2;
+    }
+
+    int getPieces() {
+        return whiteMen + whiteKings + blackMen + blackKings;
+    }
+
+    //Name used for this signature's files, for example "2-0-1-1" for two white men against a black man and king
+    String getName() {
+        return whiteMen + "-" + whiteKings + "-" + blackMen + "-" + blackKings;
+    }
+
+    //Returns the index of a position, which must have this signature's material
+    long index(int whiteBits, int blackBits, int kingBits, int player) {
+        int whiteMenBits = whiteBits & ~kingBits;
+        int blackMenBits = blackBits & ~kingBits;
+        int whiteKingBits = whiteBits & kingBits;
+        int blackKingBits = blackBits & kingBits;
+        int used = whiteMenBits;
+        long index = rank(whiteMenBits, WHITE_MEN_SQUARES);
+        index = index * blackMenCount + rank(blackMenBits, ~used);
+        used |= blackMenBits;
+        index = index * whiteKingCount + rank(whiteKingBits, ~used);
+        used |= whiteKingBits;
+        index = index * blackKingCount + rank(blackKingBits, ~used);
+        return index * 2 + (player == BLACK ? 1 : 0);
+    }
+
+    /*
+    Turns an index back into a position, filling {white, black, kings, player}
+    Returns false for the unused indexes that put a black man on row 7
+     */
+    boolean position(long index, int[] position) {
+        int player = (index & 1) == 0 ? WHITE : BLACK;
+        index >>>= 1;
+        long blackKingRank = index % blackKingCount;
+        index /= blackKingCount;
+        long whiteKingRank = index % whiteKingCount;
+        index /= whiteKingCount;
+        long blackMenRank = index % blackMenCount;
+        long whiteMenRank = index / blackMenCount;
+
+        int whiteMenBits = unrank(whiteMenRank, whiteMen, WHITE_MEN_SQUARES);
+        int used = whiteMenBits;
+        int blackMenBits = unrank(blackMenRank, blackMen, ~used);
+        used |= blackMenBits;
+        int whiteKingBits = unrank(whiteKingRank, whiteKings, ~used);
+        used |= whiteKingBits;
+        int blackKingBits = unrank(blackKingRank, blackKings, ~used);
+        position[0] = whiteMenBits | whiteKingBits;
+        position[1] = blackMenBits | blackKingBits;
+        position[2] = whiteKingBits | blackKingBits;
+        position[3] = player;
+        return (blackMenBits & BLACK_CROWN) == 0;
+    }
+
+    /*
+    Ranks a set of squares as a combination of the free squares: each chosen square is replaced by how many free
+    squares come before it, and the sorted positions c1 < c2 < ... are ranked as C(c1, 1) + C(c2, 2) + ...
+     */
+    private static long rank(int chosen, int free) {
+        long rank = 0;
+        int k = 0;
+        while (chosen != 0) {
+            int sq = Integer.numberOfTrailingZeros(chosen);
+            chosen &= chosen - 1;
+            k++;
+            rank += BINOMIAL[Integer.bitCount(free & ((1 << sq) - 1))][k];
+        }
+        return rank;
+    }
+
+    //Reverses rank, returning the k squares out of the free squares that have the given rank
+    private static int unrank(long rank, int k, int free) {
+        int chosen = 0;
+        for (int i = k; i >= 1; i--) {
+            int position = i - 1;
+            while (BINOMIAL[position + 1][i] <= rank) {
+                position++;
+            }
+            rank -= BINOMIAL[position][i];
+            chosen |= selectSquare(free, position);
+        }
+        return chosen;
+    }
+
+    //Returns the bit of the n-th (from 0) set bit of free
+    private static int selectSquare(int free, int n) {
+        for (int i = 0; i < n; i++) {
+            free &= free - 1;
+        }
+        return free & -free;
+    }
+}
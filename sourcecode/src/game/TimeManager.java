@@ -0,0 +1,81 @@
+package game;
+
+/*
+Decides how long one search may take, for searches limited by time instead of depth
+Two limits are worked out when the search starts:
+    soft limit - no new iteration is started after this, the usual time the move takes
+    hard limit - the search is aborted here even in the middle of an iteration (see Search.setDeadline)
+With a fixed time per move both limits are that time. With a game clock the soft limit is the remaining time
+shared over the moves expected to be left, which depends on how many pieces are left, plus most of the increment
+While searching, the soft limit grows when the best move changes or the score drops between iterations,
+and shrinks while the best move stays the same, but never passes the hard limit
+ */
+final class TimeManager {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long OVERHEAD_NANOS = 5 * NANOS_PER_MILLI; //Kept back for returning the move
+    private static final int BRANCHING = 3; //Rough ratio between the times of two iterations in a row
+    private static final int SCORE_DROP = 50;
+
+    private final long start = System.nanoTime();
+    private final long baseLimit;
+    private final long hardLimit;
+    private long softLimit;
+    private long lastIterationStart = start;
+    private long lastIterationTime;
+    private Move lastBestMove;
+    private int lastScore;
+
+    private TimeManager(long softLimit, long hardLimit) {
+        this.baseLimit = softLimit;
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+    }
+
+    //The whole time is given to the move, minus a small overhead
+    static TimeManager forMoveTime(long moveTimeMillis) {
+        long limit = Math.max(NANOS_PER_MILLI, moveTimeMillis * NANOS_PER_MILLI - OVERHEAD_NANOS);
+        return new TimeManager(limit, limit);
+    }
+
+    /*
+    Shares the remaining clock time over the moves likely to be left in the game
+    A full board is expected to last about 35 more moves and each piece taken off makes the rest of the game shorter,
+    the hard limit stops any one move from using more than a quarter of the clock
+     */
+    static TimeManager forClock(long remainingMillis, long incrementMillis, int pieces) {
+        long remaining = Math.max(0, remainingMillis * NANOS_PER_MILLI - OVERHEAD_NANOS);
+        long increment = incrementMillis * NANOS_PER_MILLI;
+        int movesToGo = 10 + pieces;
+        long soft = remaining / movesToGo + increment * 3 / 4;
+        long hard = Math.min(remaining / 4 + increment * 3 / 4, soft * 4);
+        soft = Math.max(NANOS_PER_MILLI, Math.min(soft, hard));
+        return new TimeManager(soft, Math.max(soft, hard));
+    }
+
+    //Returns the System.nanoTime value at which the search has to stop
+    long getDeadline() {
+        return start + hardLimit;
+    }
+
+    /*
+    Called after each completed iteration, returns whether the next, deeper iteration should be started
+    An iteration is not started if the soft limit has passed or if it is not expected to finish before the hard limit
+     */
+    boolean startNextIteration(Move bestMove, int score) {
+        long now = System.nanoTime();
+        lastIterationTime = now - lastIterationStart;
+        lastIterationStart = now;
+        if (lastBestMove != null) {
+            if (!bestMove.equals(lastBestMove) || score < lastScore - SCORE_DROP) {
+                softLimit = Math.min(hardLimit, softLimit * 3 / 2); //Unstable, worth searching longer
+            } else {
+                softLimit = Math.max(baseLimit / 2, softLimit * 9 / 10);
+            }
+        }
+        lastBestMove = bestMove;
+        lastScore = score;
+        long elapsed = now - start;
+        return elapsed < softLimit && elapsed + lastIterationTime * BRANCHING < hardLimit;
+    }
+}
@@ -0,0 +1,201 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Headless engine against engine matches, run with:
+    java game.Tournament [games] [engine A] [engine B] [threads] [seed]
+An engine is a depth for the alpha-beta Engine, or mcts followed by a number of playouts for MctsEngine (mcts20000)
+Games are played in pairs: both games of a pair start from the same random opening with the same starting player,
+and the engines swap colours for the second game, so neither engine gets the better side of an opening more often
+Games run at once on a pool of worker threads, each worker with its own pair of engines,
+and everything random comes from the seed so a run can be repeated exactly
+Reports wins, draws and losses for engine A, the Elo difference with a 95% error bar and the games played per second
+ */
+public class Tournament {
+
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+    private static final int OPENING_PLIES = 4; //Random plies at the start of each pair of games
+    private static final int MAX_GAME_PLIES = 300; //Games this long are scored as draws
+    private static final int TABLE_BITS = 16; //Smaller tables than the default, there is one per engine per worker
+
+    private final String engineA;
+    private final String engineB;
+    private final long seed;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final AtomicInteger finishedGames = new AtomicInteger();
+    private final AtomicInteger winsA = new AtomicInteger();
+    private final AtomicInteger draws = new AtomicInteger();
+    private final AtomicInteger winsB = new AtomicInteger();
+
+    public Tournament(int depthA, int depthB, long seed) {
+        this(Integer.toString(depthA), Integer.toString(depthB), seed);
+    }
+
+    //Plays two engines described as in main, a depth or mcts and a number of playouts
+    public Tournament(String engineA, String engineB, long seed) {
+        createEngine(engineA);
+        createEngine(engineB); //Checks both descriptions before any game starts
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        String engineA = args.length > 1 ? args[1] : "6";
+        String engineB = args.length > 2 ? args[2] : "4";
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+        Tournament tournament = new Tournament(engineA, engineB, seed);
+        long start = System.nanoTime();
+        tournament.run(games, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(tournament.getSummary());
+        System.out.printf("%d games in %.1fs, %.2f games/s on %d threads%n", games, seconds, games / seconds, threads);
+    }
+
+    //Plays the given number of games (rounded up to an even number) spread over the worker threads
+    public void run(int games, int threads) throws InterruptedException {
+        final int total = games + games % 2;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> playGames(total)));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tournament game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    //Worker loop, takes games from the shared counter until every game has been played
+    private void playGames(int total) {
+        SearchEngine playerA = createEngine(engineA);
+        SearchEngine playerB = createEngine(engineB);
+        int game;
+        while ((game = nextGame.getAndIncrement()) < total) {
+            //Both games of a pair use the same seed, so they get the same starting player and opening
+            Random random = new Random(seed * 1000003 + game / 2);
+            Board board = new Board(random.nextInt(2) + 1);
+            boolean aIsWhite = game % 2 == 0;
+            playerA.newGame();
+            playerB.newGame();
+            int winner = playGame(board, aIsWhite ? playerA : playerB, aIsWhite ? playerB : playerA, random, OPENING_PLIES, null);
+            if (winner == 0) {
+                draws.incrementAndGet();
+            } else if ((winner == WHITE) == aIsWhite) {
+                winsA.incrementAndGet();
+            } else {
+                winsB.incrementAndGet();
+            }
+            int finished = finishedGames.incrementAndGet();
+            if (finished % 100 == 0) {
+                System.out.println(finished + " games: " + getSummary());
+            }
+        }
+    }
+
+    /*
+    Plays a game to the end on the board without printing anything, returning the winner or 0 for a draw
+    The first randomPlies plies are picked at random, after that each engine searches its own side's moves
+    A player with no legal moves or no pieces left loses, a game reaching MAX_GAME_PLIES plies is a draw
+    Every move played is added to moves, if it is not null
+     */
+    static int playGame(Board board, SearchEngine whiteEngine, SearchEngine blackEngine, Random random, int randomPlies, ArrayList<Move> moves) {
+        for (int ply = 0; ply < MAX_GAME_PLIES; ply++) {
+            int player = board.getCurrentPlayer();
+            Move move;
+            if (ply < randomPlies) {
+                ArrayList<Move> legalMoves = board.getLegalMoves(player);
+                move = legalMoves.isEmpty() ? null : legalMoves.get(random.nextInt(legalMoves.size()));
+            } else {
+                move = (player == WHITE ? whiteEngine : blackEngine).search(board).getBestMove();
+            }
+            if (move == null) {
+                return player == WHITE ? BLACK : WHITE;
+            }
+            board.doMove(move);
+            if (moves != null) {
+                moves.add(move);
+            }
+            if (board.getPieceCount(player == WHITE ? BLACK : WHITE) == 0) {
+                return player;
+            }
+        }
+        return 0;
+    }
+
+    /*
+    Returns the results so far from engine A's point of view, with the Elo difference worked out from the score
+    The error bar is 1.96 standard errors of the mean game score, converted to Elo at each end
+     */
+    public String getSummary() {
+        int wins = winsA.get();
+        int drawn = draws.get();
+        int losses = winsB.get();
+        int games = wins + drawn + losses;
+        if (games == 0) {
+            return "No games played";
+        }
+        double score = (wins + drawn * 0.5) / games;
+        double variance = (wins * Math.pow(1 - score, 2) + drawn * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+        double margin = 1.96 * Math.sqrt(variance / games);
+        double elo = elo(score);
+        return String.format("A (%s) vs B (%s): +%d =%d -%d, score %.1f%%, Elo %+.1f (%+.1f / %+.1f)",
+                describe(engineA), describe(engineB), wins, drawn, losses, score * 100, elo, elo(score - margin) - elo, elo(score + margin) - elo);
+    }
+
+    /*
+    Creates the engine for a description: a depth for Engine, or mcts and a number of playouts for a single threaded
+    MctsEngine, whose tree is sized for the playouts. Each worker has its own engines, the games are the parallelism
+     */
+    static SearchEngine createEngine(String description) {
+        try {
+            if (description.startsWith("mcts")) {
+                int playouts = Integer.parseInt(description.substring(4));
+                if (playouts < 1) {
+                    throw new IllegalArgumentException("MCTS needs at least one playout: " + description);
+                }
+                return new MctsEngine(playouts, (int) Math.min(1 << 22, 1 + (long) playouts * 16 + Board.MAX_MOVES));
+            }
+            return new Engine(Integer.parseInt(description), 0, new TranspositionTable(TABLE_BITS));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an engine: " + description);
+        }
+    }
+
+    private static String describe(String description) {
+        return description.startsWith("mcts") ? "MCTS " + description.substring(4) + " playouts" : "depth " + description;
+    }
+
+    //Elo difference that gives the expected score, clamped so that a perfect or zero score stays finite
+    private static double elo(double score) {
+        double clamped = Math.min(Math.max(score, 0.001), 0.999);
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+
+    public int getWinsA() {
+        return winsA.get();
+    }
+
+    public int getDraws() {
+        return draws.get();
+    }
+
+    public int getWinsB() {
+        return winsB.get();
+    }
+}
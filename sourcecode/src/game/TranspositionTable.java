@@ -0,0 +1,116 @@
+package game;
+
+/*
+Fixed size hash table of searched positions, so a position reached through different move orders is only searched once
+Entries are kept in two primitive arrays, one for the 64 bit key and one for the packed data:
+    bits 0 - 31  score
+    bits 32 - 39 depth
+    bits 40 - 41 bound (EXACT, LOWER or UPPER)
+    bits 42 - 55 best move by its from and target squares, from square + target square * 32 on Board
+                 and from square + target square * 128 on VariantBoard (see SearchBoard.getMoveKeyBits)
+    bit  56      set when a best move is stored
+The table is split into buckets of two slots. The first slot keeps the deepest search of the positions that map
+to the bucket, the second is always overwritten, so deep results survive while recent ones are still kept
+
+The table is shared by every thread of a parallel search without any locking. Each slot stores key XOR data
+instead of the key, so if two threads write a slot at the same time and the key and data end up from different
+writes, the XOR no longer matches any position and the slot is treated as empty
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; //The score is at least this high, the search failed high
+    public static final int UPPER = 3; //The score is at most this high, no move beat alpha
+    public static final int NO_MOVE = -1;
+
+    private static final long HAS_MOVE = 1L << 56;
+    private static final long MOVE_MASK = 0x3FFF;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /*
+    Creates a table with 2^sizeBits entries, each entry uses 16 bytes
+     */
+    public TranspositionTable(int sizeBits) {
+        if (sizeBits < 1 || sizeBits > 30) {
+            throw new IllegalArgumentException("Table size must be between 2^1 and 2^30 entries");
+        }
+        keys = new long[1 << sizeBits];
+        data = new long[1 << sizeBits];
+        mask = (1 << sizeBits) - 1;
+    }
+
+    //Returns the number of entries in the table
+    public int size() {
+        return keys.length;
+    }
+
+    //Empties the table
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            data[i] = 0;
+        }
+    }
+
+    /*
+    Returns the packed data stored for a key, or 0 if the position is not in the table
+    A stored entry is never 0 because its bound is always set
+     */
+    public long probe(long key) {
+        int index = (int) key & mask & ~1;
+        long entry = data[index];
+        if ((keys[index] ^ entry) == key && entry != 0) {
+            return entry;
+        }
+        entry = data[index + 1];
+        if ((keys[index + 1] ^ entry) == key && entry != 0) {
+            return entry;
+        }
+        return 0;
+    }
+
+    /*
+    Stores a search result, move is the from and target squares of the best move or NO_MOVE
+    The depth-preferred slot is replaced when the new result is at least as deep or for the same position,
+    otherwise the result goes into the always-replace slot
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int index = (int) key & mask & ~1;
+        long entry = (score & 0xFFFFFFFFL) | (long) Math.min(depth, 255) << 32 | (long) bound << 40;
+        if (move != NO_MOVE) {
+            entry |= (long) move << 42 | HAS_MOVE;
+        }
+        long old = data[index];
+        boolean samePosition = (keys[index] ^ old) == key;
+        if (samePosition || getDepth(old) <= depth) {
+            if (samePosition && move == NO_MOVE && (old & HAS_MOVE) != 0) {
+                entry |= old & (MOVE_MASK << 42 | HAS_MOVE); //Keeps the best move from an earlier search
+            }
+            keys[index] = key ^ entry;
+            data[index] = entry;
+        } else {
+            keys[index + 1] = key ^ entry;
+            data[index + 1] = entry;
+        }
+    }
+
+    public static int getScore(long entry) {
+        return (int) entry;
+    }
+
+    public static int getDepth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int getBound(long entry) {
+        return (int) (entry >>> 40) & 3;
+    }
+
+    //Returns the from and target squares of the best move, as stored, or NO_MOVE
+    public static int getMove(long entry) {
+        return (entry & HAS_MOVE) != 0 ? (int) (entry >>> 42 & MOVE_MASK) : NO_MOVE;
+    }
+}
@@ -0,0 +1,278 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/*
+Fits the evaluation weights (see EvalWeights) to game results, Texel style, run with:
+    java game.Tuner <weights out> selfplay [games] [depth] [threads]
+    java game.Tuner <weights out> <games.pdn or GameArchive> [threads]
+Every move of every game with a known result is a sample: getMoveScore of the move, turned into an expected result
+with the logistic function 1 / (1 + e^(-k * score)), should match how the game ended for the player who made it
+(1 for a win, 0.5 for a draw, 0 for a loss). getMoveScore is a sum of counts times weights (Board.getMoveFeatures),
+so only the counts of each sample are kept and a sample takes a few bytes, however the games were stored
+First k is fitted to the current weights, then the weights are moved down the gradient of the mean squared error.
+The error and gradient over all samples are summed in parallel, each thread taking its own slice of the sample arrays
+The first RANDOM_PLIES moves of a self-play game are random and are not used as samples
+ */
+public class Tuner {
+
+    static final int RANDOM_PLIES = 6;
+    private static final int ITERATIONS = 2000;
+    private static final double LEARNING_RATE = 0.05;
+
+    //Samples are packed into flat arrays: EvalWeights.COUNT counts per sample, and the result for the player who moved
+    private byte[] features = new byte[EvalWeights.COUNT * 1024];
+    private byte[] results = new byte[1024]; //0 loss, 1 draw, 2 win
+    private int samples;
+    private final int[] buffer = new int[EvalWeights.COUNT];
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java game.Tuner <weights out> selfplay [games] [depth] [threads]");
+            System.out.println("       java game.Tuner <weights out> <games.pdn or archive> [threads]");
+            return;
+        }
+        Tuner tuner = new Tuner();
+        int threads;
+        long start = System.nanoTime();
+        if (args[1].equals("selfplay")) {
+            int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            int depth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+            threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            tuner.playGames(games, depth, threads, 1);
+        } else {
+            threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            tuner.importGames(new File(args[1]));
+        }
+        System.out.printf("%d samples in %.1fs%n", tuner.getSampleCount(), (System.nanoTime() - start) / 1e9);
+        EvalWeights before = Board.getWeights();
+        EvalWeights tuned = tuner.tune(before, threads);
+        System.out.println("Before: " + before);
+        System.out.println("After:  " + tuned);
+        tuned.write(new File(args[0]), "Tuned on " + tuner.getSampleCount() + " samples");
+    }
+
+    public int getSampleCount() {
+        return samples;
+    }
+
+    /*
+    Adds every move of a game as a sample, games without a result are skipped
+    skipPlies moves at the start of the game are played but not used
+     */
+    public void addGame(GameRecord game, int skipPlies) {
+        int result = game.getResult();
+        if (result == GameRecord.UNKNOWN) {
+            return;
+        }
+        Board board = game.getStartBoard();
+        ArrayList<Move> moves = game.getMoves();
+        for (int ply = 0; ply < moves.size(); ply++) {
+            Move move = moves.get(ply);
+            if (ply >= skipPlies) {
+                if (samples == results.length) {
+                    results = Arrays.copyOf(results, samples * 2);
+                    features = Arrays.copyOf(features, samples * 2 * EvalWeights.COUNT);
+                }
+                board.getMoveFeatures(move, buffer);
+                for (int i = 0; i < EvalWeights.COUNT; i++) {
+                    features[samples * EvalWeights.COUNT + i] = (byte) buffer[i]; //Every count fits, there are 12 pieces a side
+                }
+                int winner = result == GameRecord.WHITE_WINS ? 1 : result == GameRecord.BLACK_WINS ? 2 : 0;
+                results[samples] = (byte) (winner == 0 ? 1 : winner == move.getPlayer() ? 2 : 0);
+                samples++;
+            }
+            board.doMove(move);
+        }
+    }
+
+    //Reads games one at a time from a PDN file, or a GameArchive when the file does not end in .pdn
+    public void importGames(File file) throws IOException {
+        readGames(file, game -> addGame(game, 0));
+    }
+
+    //Plays games of the engine against itself on several threads, the games are added in the order they were started
+    public void playGames(int games, int depth, int threads, long seed) throws InterruptedException {
+        selfPlay(games, depth, threads, seed, game -> addGame(game, RANDOM_PLIES));
+    }
+
+    //Passes every game in a PDN file or GameArchive to the consumer, one at a time. Also used by NnueTrainer
+    static void readGames(File file, Consumer<GameRecord> consumer) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".pdn")) {
+            try (PdnReader reader = new PdnReader(new BufferedReader(new FileReader(file)))) {
+                GameRecord game;
+                while ((game = reader.next()) != null) {
+                    consumer.accept(game);
+                }
+            }
+        } else {
+            GameArchive archive = GameArchive.open(file);
+            for (long i = 0; i < archive.size(); i++) {
+                consumer.accept(archive.read(i));
+            }
+        }
+    }
+
+    /*
+    Plays games of the engine against itself on several threads and passes them to the consumer on the calling thread,
+    in the order they were started. The first RANDOM_PLIES moves of each game are random
+     */
+    static void selfPlay(int games, int depth, int threads, long seed, Consumer<GameRecord> consumer) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<GameRecord>> futures = new ArrayList<>();
+        for (int i = 0; i < games; i++) {
+            final long gameSeed = seed * 1000003 + i;
+            futures.add(pool.submit(() -> playGame(depth, gameSeed)));
+        }
+        try {
+            for (Future<GameRecord> future : futures) {
+                consumer.accept(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Self-play game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static GameRecord playGame(int depth, long seed) {
+        Random random = new Random(seed);
+        int startingPlayer = random.nextInt(2) + 1;
+        Engine engine = new Engine(depth, 0, new TranspositionTable(16));
+        ArrayList<Move> moves = new ArrayList<>();
+        int winner = Tournament.playGame(new Board(startingPlayer), engine, engine, random, RANDOM_PLIES, moves);
+        return new GameRecord(startingPlayer, moves, winner == 1 ? GameRecord.WHITE_WINS : winner == 2 ? GameRecord.BLACK_WINS : GameRecord.DRAW);
+    }
+
+    /*
+    Returns weights fitted to the samples, starting from the given weights
+    The weights are kept as doubles while tuning and rounded at the end, the scale is fixed by k
+    so the tuned weights stay in the same range as the ones they started from
+     */
+    public EvalWeights tune(EvalWeights start, int threads) throws InterruptedException {
+        if (samples == 0) {
+            return start;
+        }
+        int[] initial = start.toArray();
+        double[] weights = new double[EvalWeights.COUNT];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = initial[i];
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            double k = fitScale(weights, pool, threads);
+            double error = errorAndGradient(weights, k, null, pool, threads);
+            System.out.printf("k = %.5f, starting error %.6f%n", k, error);
+
+            //Adam steps, each weight gets its own step size from the history of its gradient
+            double[] gradient = new double[weights.length];
+            double[] mean = new double[weights.length];
+            double[] variance = new double[weights.length];
+            for (int iteration = 1; iteration <= ITERATIONS; iteration++) {
+                error = errorAndGradient(weights, k, gradient, pool, threads);
+                for (int i = 0; i < weights.length; i++) {
+                    mean[i] = 0.9 * mean[i] + 0.1 * gradient[i];
+                    variance[i] = 0.999 * variance[i] + 0.001 * gradient[i] * gradient[i];
+                    double meanEstimate = mean[i] / (1 - Math.pow(0.9, iteration));
+                    double varianceEstimate = variance[i] / (1 - Math.pow(0.999, iteration));
+                    weights[i] -= LEARNING_RATE * meanEstimate / (Math.sqrt(varianceEstimate) + 1e-9);
+                }
+                if (iteration % 200 == 0) {
+                    System.out.printf("Iteration %d error %.6f weights %s%n", iteration, error, Arrays.toString(round(weights)));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return new EvalWeights(round(weights));
+    }
+
+    //Finds the k with the least error for the weights by a ternary search, the error is convex in k
+    private double fitScale(double[] weights, ExecutorService pool, int threads) throws InterruptedException {
+        double low = 0.0001;
+        double high = 1;
+        for (int i = 0; i < 40; i++) {
+            double a = low + (high - low) / 3;
+            double b = high - (high - low) / 3;
+            if (errorAndGradient(weights, a, null, pool, threads) < errorAndGradient(weights, b, null, pool, threads)) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /*
+    Returns the mean squared error of the predictions and, if gradient is not null, fills it with the
+    derivative of the error with respect to each weight. Each thread sums one slice of the samples
+     */
+    private double errorAndGradient(double[] weights, double k, double[] gradient, ExecutorService pool, int threads) throws InterruptedException {
+        int count = samples;
+        int slice = (count + threads - 1) / threads;
+        ArrayList<Future<double[]>> parts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int from = Math.min(count, t * slice);
+            final int to = Math.min(count, from + slice);
+            parts.add(pool.submit(() -> sumSlice(weights, k, from, to, gradient != null)));
+        }
+        double[] total = new double[EvalWeights.COUNT + 1];
+        try {
+            for (Future<double[]> part : parts) {
+                double[] sums = part.get();
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += sums[i];
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tuning thread failed", e.getCause());
+        }
+        if (gradient != null) {
+            for (int i = 0; i < gradient.length; i++) {
+                gradient[i] = total[i + 1] / count;
+            }
+        }
+        return total[0] / count;
+    }
+
+    //Returns {squared error, gradient for each weight} summed over samples from up to to
+    private double[] sumSlice(double[] weights, double k, int from, int to, boolean withGradient) {
+        double[] sums = new double[EvalWeights.COUNT + 1];
+        for (int s = from; s < to; s++) {
+            int offset = s * EvalWeights.COUNT;
+            double score = 0;
+            for (int i = 0; i < EvalWeights.COUNT; i++) {
+                score += weights[i] * features[offset + i];
+            }
+            double predicted = 1 / (1 + Math.exp(-k * score));
+            double difference = predicted - results[s] * 0.5;
+            sums[0] += difference * difference;
+            if (withGradient) {
+                double slope = 2 * difference * k * predicted * (1 - predicted);
+                for (int i = 0; i < EvalWeights.COUNT; i++) {
+                    sums[i + 1] += slope * features[offset + i];
+                }
+            }
+        }
+        return sums;
+    }
+
+    private static int[] round(double[] weights) {
+        int[] rounded = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            rounded[i] = (int) Math.round(weights[i]);
+        }
+        return rounded;
+    }
+}
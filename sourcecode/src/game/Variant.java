@@ -0,0 +1,111 @@
+package game;
+
+/*
+The size of a draughts board and the lookup tables its rules need, used by VariantBoard
+As on the 8x8 board, the playable squares are numbered row by row from row 0, size / 2 to a row,
+with row r holding the squares on columns (r & 1), (r & 1) + 2 ... so square 0 is [0, 0]
+Positions and move text number the squares from 1 the way Board.fromFen does, each row from its highest column down
+Every variant keeps the rules of the 8x8 game: men step and capture diagonally towards the opponent only,
+kings step and jump one square in any direction and may jump any piece, a capture keeps the turn,
+captures are not forced and a man reaching the far row is crowned
+Each side starts with its men on the rowsOfMen rows nearest to it, black from row 0 and white from the last row
+The 10x10 and 12x12 variants only share their board size and starting rows with international and Canadian draughts.
+Those games let men capture backwards, give kings long moves and jumps, and force the longest capture,
+none of which is played here
+ */
+public final class Variant {
+
+    static final int NONE = -1;
+    //Directions in the same order as Board: [+1, +1], [-1, +1], [+1, -1], [-1, -1]
+    static final int[] ROW_STEP = {1, -1, 1, -1};
+    static final int[] COLUMN_STEP = {1, 1, -1, -1};
+
+    public static final Variant CHECKERS = new Variant(8, 3);
+    public static final Variant TEN_BY_TEN = new Variant(10, 4);
+    public static final Variant TWELVE_BY_TWELVE = new Variant(12, 5);
+
+    final int size;
+    final int rowsOfMen;
+    final int squares;
+    final int[] squareRow;
+    final int[] squareColumn;
+    /*
+    The square one step and two steps away from each square in each direction, or NONE off the board,
+    indexed by direction * squares + square. These replace the bounds checks of a move generator
+     */
+    final int[] steps;
+    final int[] jumps;
+    final long[] pieceKeys; //Zobrist keys, indexed by piece * squares + square
+
+    private Variant(int size, int rowsOfMen) {
+        this.size = size;
+        this.rowsOfMen = rowsOfMen;
+        squares = size * size / 2;
+        squareRow = new int[squares];
+        squareColumn = new int[squares];
+        for (int sq = 0; sq < squares; sq++) {
+            squareRow[sq] = sq / (size / 2);
+            squareColumn[sq] = sq % (size / 2) * 2 + (squareRow[sq] & 1);
+        }
+        steps = new int[4 * squares];
+        jumps = new int[4 * squares];
+        for (int d = 0; d < 4; d++) {
+            for (int sq = 0; sq < squares; sq++) {
+                steps[d * squares + sq] = square(squareRow[sq] + ROW_STEP[d], squareColumn[sq] + COLUMN_STEP[d]);
+                jumps[d * squares + sq] = square(squareRow[sq] + 2 * ROW_STEP[d], squareColumn[sq] + 2 * COLUMN_STEP[d]);
+            }
+        }
+        pieceKeys = Zobrist.pieceKeys(squares);
+    }
+
+    //Returns the variant played on a board of the given size
+    public static Variant forSize(int size) {
+        switch (size) {
+            case 8:
+                return CHECKERS;
+            case 10:
+                return TEN_BY_TEN;
+            case 12:
+                return TWELVE_BY_TWELVE;
+            default:
+                throw new IllegalArgumentException("No variant is played on a " + size + "x" + size + " board");
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getSquareCount() {
+        return squares;
+    }
+
+    //Size needed for a move buffer, each piece has at most one move or capture in each of the 4 directions
+    public int getMaxMoves() {
+        return 4 * squares;
+    }
+
+    //Returns the square at the board coordinates, or NONE if they are off the board or not a playable square
+    public int square(int row, int column) {
+        if (row < 0 || row >= size || column < 0 || column >= size || ((row ^ column) & 1) != 0) {
+            return NONE;
+        }
+        return row * (size / 2) + column / 2;
+    }
+
+    //Converts between square indices and the square numbers of positions and move text, as Board.squareOfNumber
+    public int squareOfNumber(int number) {
+        int half = size / 2;
+        return (number - 1) / half * half + half - 1 - (number - 1) % half;
+    }
+
+    public int numberOfSquare(int sq) {
+        int half = size / 2;
+        return sq / half * half + half - sq % half;
+    }
+
+    @Override
+    public String toString() {
+        return size + "x" + size;
+    }
+}
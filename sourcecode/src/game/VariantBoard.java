@@ -0,0 +1,333 @@
+package game;
+
+import java.util.Arrays;
+
+/*
+A board for any Variant, with the same rules as Board (see Variant)
+Board keeps the 8x8 game on 32 bit bitboards, which cannot hold the 50 squares of 10x10 or the 72 of 12x12,
+so this board keeps one piece per square and finds moves with the variant's step and jump tables instead
+It has the move generation, do/undo, hash and evaluation part of Board's interface (see SearchBoard),
+so the larger variants can be counted with perft and searched by Engine
+The evaluation is the handcrafted one of Board.evaluate with the same weights, a man being advanced in the
+opponent's half of the board. The network of Board.setNetwork only knows the 8x8 board and is not used here
+Moves are packed into ints in the same spirit as Move.encode, with room for the larger square numbers:
+    bits 0 - 6 from square, bits 7 - 13 target square, bit 14 capture flag, bits 15 - 16 player, bits 17 - 18 direction
+Pieces are numbered as in Board: 0 empty, 1 white man, 2 black man, 3 white king, 4 black king
+ */
+public class VariantBoard implements SearchBoard {
+
+    private static final int EMPTY = 0;
+    private static final int WHITE = 1;
+    private static final int BLACK = 2;
+    private static final int CAPTURE_FLAG = 1 << 14;
+    private static final int UNDO_PROMOTED = 1 << 24;
+
+    private final Variant variant;
+    private final byte[] pieces;
+    private final int[] pieceCounts = new int[5]; //Indexed by piece
+    private int currentPlayer;
+    private long pieceHash; //The Zobrist key of the pieces, see getHash
+    private int materialScore; //evaluate for white, kept up to date by doMove and undoMove
+    private EvalWeights scoreWeights; //The weights materialScore was worked out with
+    private final int[] squareScores; //What each piece adds to materialScore on each square, indexed by piece * squares + square
+    private int[] undoStack = new int[64];
+    private int undoSize;
+
+    //Creates the starting position of a variant
+    public VariantBoard(Variant variant, int startingPlayer) {
+        this.variant = variant;
+        pieces = new byte[variant.squares];
+        squareScores = new int[5 * variant.squares];
+        int menSquares = variant.rowsOfMen * variant.size / 2;
+        for (int sq = 0; sq < menSquares; sq++) {
+            place(sq, BLACK);
+            place(variant.squares - 1 - sq, WHITE);
+        }
+        currentPlayer = startingPlayer;
+        rescore(Board.getWeights());
+    }
+
+    /*
+    Creates a board from a position string in the same form as Board.fromFen, "W:W21,22,K30:B1,2,K9",
+    with the squares numbered from 1 to the variant's square count
+     */
+    public static VariantBoard fromFen(Variant variant, String fen) {
+        String[] parts = fen.trim().split(":");
+        if (parts.length != 3 || !(parts[0].equals("W") || parts[0].equals("B"))) {
+            throw new IllegalArgumentException("Invalid position: " + fen);
+        }
+        VariantBoard board = new VariantBoard(variant, parts[0].equals("W") ? WHITE : BLACK);
+        Arrays.fill(board.pieces, (byte) EMPTY);
+        Arrays.fill(board.pieceCounts, 0);
+        board.pieceHash = 0;
+        for (int i = 1; i < 3; i++) {
+            String list = parts[i];
+            int colour = list.startsWith("W") ? WHITE : list.startsWith("B") ? BLACK : EMPTY;
+            if (colour == EMPTY) {
+                throw new IllegalArgumentException("Invalid position: " + fen);
+            }
+            for (String piece : list.substring(1).split(",")) {
+                piece = piece.trim();
+                if (piece.isEmpty()) {
+                    continue;
+                }
+                boolean king = piece.startsWith("K");
+                int number = Integer.parseInt(king ? piece.substring(1) : piece);
+                if (number < 1 || number > variant.squares) {
+                    throw new IllegalArgumentException("Invalid square " + number + " in position: " + fen);
+                }
+                int sq = variant.squareOfNumber(number);
+                if (board.pieces[sq] != EMPTY) {
+                    throw new IllegalArgumentException("Square " + number + " holds two pieces: " + fen);
+                }
+                board.place(sq, king ? colour + 2 : colour);
+            }
+        }
+        board.rescore(Board.getWeights());
+        return board;
+    }
+
+    //Returns the position as a string that fromFen can read back
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(currentPlayer == WHITE ? "W" : "B");
+        for (int colour = WHITE; colour <= BLACK; colour++) {
+            fen.append(colour == WHITE ? ":W" : ":B");
+            boolean first = true;
+            for (int number = 1; number <= variant.squares; number++) {
+                int piece = pieces[variant.squareOfNumber(number)];
+                if (piece == colour || piece == colour + 2) {
+                    fen.append(first ? "" : ",").append(piece > BLACK ? "K" : "").append(number);
+                    first = false;
+                }
+            }
+        }
+        return fen.toString();
+    }
+
+    //Puts a piece on an empty square while a position is being set up, rescore brings materialScore up to date afterwards
+    private void place(int sq, int piece) {
+        pieces[sq] = (byte) piece;
+        pieceCounts[piece]++;
+        pieceHash ^= variant.pieceKeys[piece * variant.squares + sq];
+    }
+
+    //Works out squareScores and materialScore from scratch with the given weights
+    private void rescore(EvalWeights w) {
+        int squares = variant.squares;
+        for (int sq = 0; sq < squares; sq++) {
+            boolean whiteHalf = variant.squareRow[sq] < variant.size / 2;
+            squareScores[WHITE * squares + sq] = w.man + (whiteHalf ? w.advancedMan : 0);
+            squareScores[BLACK * squares + sq] = -(w.man + (whiteHalf ? 0 : w.advancedMan));
+            squareScores[(WHITE + 2) * squares + sq] = w.king;
+            squareScores[(BLACK + 2) * squares + sq] = -w.king;
+        }
+        materialScore = 0;
+        for (int sq = 0; sq < squares; sq++) {
+            materialScore += squareScores[pieces[sq] * squares + sq];
+        }
+        scoreWeights = w;
+    }
+
+    public Variant getVariant() {
+        return variant;
+    }
+
+    @Override
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    //Returns the Zobrist key of the position, covering every piece and the player to move
+    @Override
+    public long getHash() {
+        return currentPlayer == BLACK ? pieceHash ^ Zobrist.BLACK_TO_MOVE : pieceHash;
+    }
+
+    //Scores the pieces from the point of view of the given player, as Board.evaluate does without a network
+    @Override
+    public int evaluate(int player) {
+        EvalWeights weights = Board.getWeights();
+        if (scoreWeights != weights) {
+            rescore(weights);
+        }
+        return player == WHITE ? materialScore : -materialScore;
+    }
+
+    @Override
+    public int getMaxMoves() {
+        return variant.getMaxMoves();
+    }
+
+    @Override
+    public int getCaptureFlag() {
+        return CAPTURE_FLAG;
+    }
+
+    //Moves are known by from square + target square * 128
+    @Override
+    public int getMoveKeyBits() {
+        return 14;
+    }
+
+    //Returns how many pieces, men and kings, a player has left
+    @Override
+    public int getPieceCount(int player) {
+        return pieceCounts[player] + pieceCounts[player + 2];
+    }
+
+    //Returns a size x size array of the pieces, in the same form as Board.getBoard
+    public int[][] getBoard() {
+        int[][] view = new int[variant.size][variant.size];
+        for (int sq = 0; sq < variant.squares; sq++) {
+            view[variant.squareRow[sq]][variant.squareColumn[sq]] = pieces[sq];
+        }
+        return view;
+    }
+
+    /*
+    Writes the legal moves of a player into the buffer as packed ints and returns how many there are
+    The buffer needs room for Variant.getMaxMoves moves. Moves come out in the same order as Board.generateMoves:
+    piece by piece in square order, each piece's captures and then its steps, each in direction order
+     */
+    @Override
+    public int generateMoves(int player, int[] buffer) {
+        int squares = variant.squares;
+        int[] steps = variant.steps;
+        int[] jumps = variant.jumps;
+        int opponent = player == WHITE ? BLACK : WHITE;
+        int count = 0;
+        for (int sq = 0; sq < squares; sq++) {
+            int piece = pieces[sq];
+            if (piece != player && piece != player + 2) {
+                continue;
+            }
+            boolean king = piece > BLACK;
+            int firstDirection = king ? 0 : player == WHITE ? 1 : 0; //White men go up (odd directions), black men down
+            int directionStep = king ? 1 : 2;
+            for (int d = firstDirection; d < 4; d += directionStep) {
+                int over = steps[d * squares + sq];
+                int landing = jumps[d * squares + sq];
+                if (landing != Variant.NONE && pieces[landing] == EMPTY) {
+                    int jumped = pieces[over];
+                    if (king ? jumped != EMPTY : jumped == opponent || jumped == opponent + 2) {
+                        buffer[count++] = encode(player, sq, landing, true, d);
+                    }
+                }
+            }
+            for (int d = firstDirection; d < 4; d += directionStep) {
+                int target = steps[d * squares + sq];
+                if (target != Variant.NONE && pieces[target] == EMPTY) {
+                    buffer[count++] = encode(player, sq, target, false, d);
+                }
+            }
+        }
+        return count;
+    }
+
+    /*
+    Makes a packed move in place so that it can be reversed with undoMove
+    The side to move changes unless the move is a capture, as with Board.doMove
+    Undo record layout: from square (7 bits), target square (7), captured square (7), captured piece (3),
+    promoted flag (1) and the player to move before the move (2)
+     */
+    @Override
+    public void doMove(int move) {
+        int squares = variant.squares;
+        int fromSquare = getFromSquare(move);
+        int targetSquare = getTargetSquare(move);
+        int capturedSquare = 0;
+        int capturedPiece = EMPTY;
+        if (isCapture(move)) {
+            capturedSquare = variant.steps[getDirection(move) * squares + fromSquare];
+            capturedPiece = pieces[capturedSquare];
+            pieces[capturedSquare] = EMPTY;
+            pieceCounts[capturedPiece]--;
+            pieceHash ^= variant.pieceKeys[capturedPiece * squares + capturedSquare];
+            materialScore -= squareScores[capturedPiece * squares + capturedSquare];
+        }
+        int piece = pieces[fromSquare];
+        pieces[fromSquare] = EMPTY;
+        int crownRow = piece == WHITE ? 0 : variant.size - 1;
+        boolean promoted = piece <= BLACK && variant.squareRow[targetSquare] == crownRow;
+        int endPiece = promoted ? piece + 2 : piece;
+        if (promoted) {
+            pieceCounts[piece]--;
+            pieceCounts[endPiece]++;
+        }
+        pieces[targetSquare] = (byte) endPiece;
+        pieceHash ^= variant.pieceKeys[piece * squares + fromSquare] ^ variant.pieceKeys[endPiece * squares + targetSquare];
+        materialScore += squareScores[endPiece * squares + targetSquare] - squareScores[piece * squares + fromSquare];
+
+        if (undoSize == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+        }
+        undoStack[undoSize++] = fromSquare | targetSquare << 7 | capturedSquare << 14 | capturedPiece << 21
+                | (promoted ? UNDO_PROMOTED : 0) | currentPlayer << 25;
+        if (!isCapture(move)) {
+            currentPlayer = currentPlayer == WHITE ? BLACK : WHITE;
+        }
+    }
+
+    //Reverses the last move made with doMove, restoring any captured piece and removing a promotion
+    @Override
+    public void undoMove() {
+        if (undoSize == 0) {
+            throw new IllegalStateException("No move to take back");
+        }
+        int record = undoStack[--undoSize];
+        int fromSquare = record & 127;
+        int targetSquare = (record >>> 7) & 127;
+        int capturedSquare = (record >>> 14) & 127;
+        int capturedPiece = (record >>> 21) & 7;
+        int squares = variant.squares;
+        int endPiece = pieces[targetSquare];
+        int piece = endPiece;
+        pieces[targetSquare] = EMPTY;
+        if ((record & UNDO_PROMOTED) != 0) {
+            pieceCounts[piece]--;
+            piece -= 2;
+            pieceCounts[piece]++;
+        }
+        pieces[fromSquare] = (byte) piece;
+        pieceHash ^= variant.pieceKeys[piece * squares + fromSquare] ^ variant.pieceKeys[endPiece * squares + targetSquare];
+        materialScore += squareScores[piece * squares + fromSquare] - squareScores[endPiece * squares + targetSquare];
+        if (capturedPiece != EMPTY) {
+            pieces[capturedSquare] = (byte) capturedPiece;
+            pieceCounts[capturedPiece]++;
+            pieceHash ^= variant.pieceKeys[capturedPiece * squares + capturedSquare];
+            materialScore += squareScores[capturedPiece * squares + capturedSquare];
+        }
+        currentPlayer = record >>> 25;
+    }
+
+    //Packs a move into an int, the direction is kept so doMove can find the captured square in the step table
+    public static int encode(int player, int fromSquare, int targetSquare, boolean capture, int direction) {
+        return fromSquare | targetSquare << 7 | (capture ? CAPTURE_FLAG : 0) | player << 15 | direction << 17;
+    }
+
+    public static int getFromSquare(int move) {
+        return move & 127;
+    }
+
+    public static int getTargetSquare(int move) {
+        return (move >>> 7) & 127;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE_FLAG) != 0;
+    }
+
+    public static int getPlayer(int move) {
+        return (move >>> 15) & 3;
+    }
+
+    private static int getDirection(int move) {
+        return move >>> 17;
+    }
+
+    //Returns a move in the "from-target" or "fromxtarget" notation of PdnWriter, with the squares numbered as in toFen
+    public String moveText(int move) {
+        return variant.numberOfSquare(getFromSquare(move)) + (isCapture(move) ? "x" : "-")
+                + variant.numberOfSquare(getTargetSquare(move));
+    }
+}
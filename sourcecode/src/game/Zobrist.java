@@ -0,0 +1,62 @@
+package game;
+
+import java.util.Random;
+
+/*
+Random keys used to give every position a 64 bit hash
+A position's key is the XOR of one key per piece on its square, plus BLACK_TO_MOVE when it is black's turn
+The keys come from a fixed seed so that the same position has the same key in every run
+ */
+final class Zobrist {
+
+    static final long BLACK_TO_MOVE;
+    private static final long[][] PIECE_KEYS = new long[5][32]; //Indexed by piece (WHITE..BLACK_KING) and square
+
+    static {
+        Random random = new Random(0x5DEECE66DL);
+        for (int piece = 1; piece < 5; piece++) {
+            for (int sq = 0; sq < 32; sq++) {
+                PIECE_KEYS[piece][sq] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /*
+    Returns a set of keys for a board with the given number of squares, indexed by piece * squares + square,
+    used by VariantBoard. Each board size has its own fixed seed, and the player to move still uses BLACK_TO_MOVE
+     */
+    static long[] pieceKeys(int squares) {
+        Random random = new Random(0x5DEECE66DL + squares);
+        long[] keys = new long[5 * squares];
+        for (int i = squares; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+
+    //Returns the key for a piece on a square, EMPTY squares have a key of 0
+    static long piece(int piece, int square) {
+        return PIECE_KEYS[piece][square];
+    }
+
+    /*
+    Calculates the piece part of a key from scratch, used when a board is created
+    After that Board keeps the key up to date as moves are made
+     */
+    static long hash(int whiteBits, int blackBits, int kingBits) {
+        long hash = 0;
+        for (int sq = 0; sq < 32; sq++) {
+            int bit = 1 << sq;
+            if ((whiteBits & bit) != 0) {
+                hash ^= PIECE_KEYS[(kingBits & bit) != 0 ? 3 : 1][sq];
+            } else if ((blackBits & bit) != 0) {
+                hash ^= PIECE_KEYS[(kingBits & bit) != 0 ? 4 : 2][sq];
+            }
+        }
+        return hash;
+    }
+}
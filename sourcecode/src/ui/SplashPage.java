@@ -1,8 +1,15 @@
 package ui;
 
 import game.Board;
+import game.Engine;
+import game.GameHistory;
+import game.Log;
 import game.Move;
+import game.SearchResult;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.*;
 import javafx.scene.*;
 import javafx.scene.control.*;
@@ -13,12 +20,16 @@ import javafx.scene.text.Text;
 import javafx.stage.Stage;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SplashPage extends Application {
     private static final int BOARD_DIM = 8;
     private static final int SQUARES = 64;
     private static final Color WHITE_COLOUR = Color.WHITE;
     private static final Color BLACK_COLOUR = Color.BLACK;
+    private static final int EMPTY = 0;
     private static final int WHITE = 1;
     private static final int BLACK = 2;
     private static final int WHITE_KING = 3;
@@ -26,14 +37,25 @@ public class SplashPage extends Application {
     private static final int PvP = 1;
     private static final int PvAI = 2;
     private Circle selectedPiece = null;
-    private Circle[] whitePieces = new Circle[12];
-    private Circle[] blackPieces = new Circle[12];
+    private Circle[][] pieces = new Circle[BOARD_DIM][BOARD_DIM]; //One circle per square, hidden when the square is empty
+    private int[][] shownBoard = new int[BOARD_DIM][BOARD_DIM]; //The pieces the circles currently show
     private GridPane gameBoard = new GridPane();
     private BorderPane layout = new BorderPane();
-    private ArrayList<Board> gameStates;
-    private ArrayList<Board> gameStatesRedo;
+    private GameHistory history;
     private Board currentBoard;
     private int gameType;
+    private int humanPlayer; //The player who clicks to move, against the AI
+    private Text currentPlayerText = new Text();
+    private Text currentTurn = new Text();
+    private ObservableList<Move> historyItems = FXCollections.observableArrayList();
+    private ListView<Move> historyList = new ListView<>(historyItems);
+    private boolean aiThinking; //Set while the AI searches for its move, player input is ignored until it has moved
+    //The AI searches and ponders on this thread so the UI never waits for it
+    private final ExecutorService aiExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ai-search");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public static void main(String[] args) {
         launch(args);
@@ -44,9 +66,12 @@ public class SplashPage extends Application {
      */
     public void start(Stage primaryStage) {
         gameType = PvAI;
-        gameStates = new ArrayList<>();
-        gameStatesRedo = new ArrayList<>();
-        this.currentBoard = new Board();
+        history = new GameHistory(new Board());
+        this.currentBoard = history.getBoard();
+        buildBoard();
+        drawSquares();
+        createPieces();
+        buildElements();
         paintBoard();
         Scene scene = new Scene(layout);
         scene.getStylesheets().add("game/style.css");
@@ -55,13 +80,20 @@ public class SplashPage extends Application {
         primaryStage.show();
     }
 
+    //Stops the AI when the window is closed
+    @Override
+    public void stop() {
+        cancelAi();
+        aiExecutor.shutdownNow();
+    }
+
     /*
     Resets a board to its initial state
      */
     private void restartGame() {
-        this.currentBoard = new Board();
-        gameStates = new ArrayList<>();
-        gameStatesRedo = new ArrayList<>();
+        cancelAi();
+        history = new GameHistory(new Board());
+        this.currentBoard = history.getBoard();
         paintBoard();
     }
 
@@ -83,41 +115,36 @@ public class SplashPage extends Application {
 
     /*
     Allows a player to undo a turn
+    Against the AI, the AI's moves are undone as well, back to before the player's last move
      */
     private void backOneTurn() {
-        /*
-        A board is only saved to the states list once a move has been carried out
-        Therefore for the first time a move is undone, the current state has to also be added to the second list
-         */
-        if (gameStatesRedo.isEmpty()) {
-            gameStatesRedo.add(currentBoard.cloneBoard());
-        }
-        this.currentBoard = gameStates.get(gameStates.size()-1).cloneBoard(); //sets the board to the new state
-        gameStatesRedo.add(0, gameStates.get(gameStates.size()-1).cloneBoard());
-        if (gameStates.size() != 1) {
-            gameStates.remove(gameStates.size()-1); //Finally removes the state from the state list
-        }
+        cancelAi();
+        do {
+            history.undo();
+        } while (gameType == PvAI && history.canUndo() && history.getMove(history.getPosition()).getPlayer() != humanPlayer);
         paintBoard();
     }
 
     /*
     Allows a player to redo a turn
+    Against the AI, the AI's moves that followed are redone as well
      */
     private void forwardOneTurn() {
-        gameStates.add(gameStatesRedo.get(0).cloneBoard());
-        this.currentBoard = gameStatesRedo.get(0);
-        gameStatesRedo.remove(0);
+        cancelAi();
+        int state = history.redo();
+        while (state == 0 && gameType == PvAI && history.canRedo() && history.getMove(history.getPosition()).getPlayer() != humanPlayer) {
+            state = history.redo();
+        }
         paintBoard();
     }
 
     /*
-    Initialises all of the UI elements based on the new board state
+    Updates the UI elements to the new board state
+    The scene graph is built once in start, so only the pieces that changed and the information texts are updated
      */
     private void paintBoard() {
-        buildBoard();
-        drawSquares();
         drawPieces();
-        buildElements();
+        updateElements();
         currentBoard.printBoard();
     }
 
@@ -154,16 +181,16 @@ public class SplashPage extends Application {
                 final int row = i;
                 final int column = j;
                 rect.setOnMouseClicked(event -> {
-                    if (selectedPiece != null) {
+                    if (selectedPiece != null && !aiThinking) {
                         Move move = new Move(currentBoard.getCurrentPlayer(), GridPane.getRowIndex(selectedPiece), GridPane.getColumnIndex(selectedPiece), row, column);
                         ArrayList<Move> legalMoves = currentBoard.getLegalMoves(currentBoard.getCurrentPlayer());
                         if (legalMoves.contains(move)) {
-                            gameStates.add(currentBoard.cloneBoard());
-                            int state = currentBoard.makeMove(move);
-                            gameStatesRedo.clear();
+                            humanPlayer = move.getPlayer();
+                            selectedPiece = null;
+                            int state = history.play(move);
                             paintBoard();
                             if (move.isCapture()) {
-                                System.out.println("Player captured " + (move.getPlayer() == WHITE ? "black piece" : "white piece "));
+                                Log.log(Log.DEBUG, move.getPlayer() == WHITE ? "Player captured black piece" : "Player captured white piece");
                             }
                             if (state != 0) {
                                 calculateWinner(state);
@@ -184,7 +211,7 @@ public class SplashPage extends Application {
     player to continue playing the game by rewinding turns
      */
     private void calculateWinner(int winner) {
-        System.out.println("The winner is " + (winner == WHITE ? "WHITE" : "BLACK"));
+        Log.log(Log.INFO, winner == WHITE ? "The winner is WHITE" : "The winner is BLACK");
         currentBoard.printGameDetails();
         Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
         alert.setTitle("Game Over!");
@@ -201,112 +228,151 @@ public class SplashPage extends Application {
     Used to reset game pieces once a game piece goes out of selected focus (when making a move)
      */
     private void resetPieceColours() {
-        for (Circle c : whitePieces) {
-            c.setFill(WHITE_COLOUR);
-        }
-        for (Circle c : blackPieces) {
-            c.setFill(BLACK_COLOUR);
+        if (selectedPiece != null) {
+            int piece = shownBoard[GridPane.getRowIndex(selectedPiece)][GridPane.getColumnIndex(selectedPiece)];
+            selectedPiece.setFill(piece == WHITE || piece == WHITE_KING ? WHITE_COLOUR : BLACK_COLOUR);
         }
     }
 
     /*
     Handles the logic when an AI makes a turn
+    The search runs on the AI thread on a copy of the board and the move is played back on the FX thread
+    Pondering is stopped first, its results stay in the engine's transposition table and speed up this search
      */
     private void doAiTurn() {
-        Move move = currentBoard.calculateBestMove(); //Evaluation function to calculate best move
+        final Engine engine = Board.getEngine();
+        engine.stop();
+        final long generation = engine.getGeneration();
+        final Board searchBoard = currentBoard.cloneBoard();
+        aiThinking = true;
+        aiExecutor.submit(() -> {
+            SearchResult result = engine.search(searchBoard, generation);
+            Platform.runLater(() -> finishAiTurn(result, generation));
+        });
+    }
 
-        int state = currentBoard.makeMove(move);
+    /*
+    Plays the move the AI found, unless the search was cancelled after it was started
+    If move is a capture the AI gets another turn, otherwise it ponders while the player thinks
+    A search that finds no move means the AI has no legal move left, so the game is over and the player has won
+     */
+    private void finishAiTurn(SearchResult result, long generation) {
+        Engine engine = Board.getEngine();
+        if (generation != engine.getGeneration()) {
+            return;
+        }
+        if (Log.isEnabled(Log.DEBUG)) {
+            Log.log(Log.DEBUG, "AI search: " + result.toString());
+        }
+        aiThinking = false;
+        Move move = result.getBestMove();
+        if (move == null) {
+            calculateWinner(currentBoard.getCurrentPlayer() == WHITE ? BLACK : WHITE);
+            return;
+        }
+        int state = history.play(move);
         paintBoard();
         if (state != 0) {
             calculateWinner(state);
             return;
         }
-        if (move.isCapture()) { //If move is a capture the player gets another turn
+        if (move.isCapture()) {
             doAiTurn();
+        } else {
+            startPondering(result);
+        }
+    }
+
+    /*
+    Searches the position after the player's expected reply, the second move of the AI's principal variation,
+    until the player moves or the AI is cancelled
+     */
+    private void startPondering(SearchResult result) {
+        List<Move> pv = result.getPrincipalVariation();
+        if (pv.size() < 2 || !currentBoard.getLegalMoves(currentBoard.getCurrentPlayer()).contains(pv.get(1))) {
+            return;
+        }
+        final Engine engine = Board.getEngine();
+        final long generation = engine.getGeneration();
+        final Board ponderBoard = currentBoard.cloneBoard();
+        ponderBoard.doMove(pv.get(1));
+        aiExecutor.submit(() -> engine.ponder(ponderBoard, generation));
+    }
+
+    //Stops the AI searching or pondering, a move it was about to play is thrown away
+    private void cancelAi() {
+        Board.getEngine().stop();
+        aiThinking = false;
+    }
+
+    /*
+    Creates a hidden piece for every square, drawPieces then shows and colours the ones in use
+    Clicking a piece of the player to move selects it
+     */
+    private void createPieces() {
+        for (int i = 0; i < BOARD_DIM; i++) {
+            for (int j = 0; j < BOARD_DIM; j++) {
+                final Circle piece = new Circle(SQUARES / 2 - 4, WHITE_COLOUR);
+                final int row = i;
+                final int column = j;
+                piece.setVisible(false);
+                piece.setOnMouseClicked(event -> {
+                    int shown = shownBoard[row][column];
+                    int owner = shown == WHITE || shown == WHITE_KING ? WHITE : BLACK;
+                    if (currentBoard.getCurrentPlayer() == owner) {
+                        resetPieceColours();
+                        this.selectedPiece = piece;
+                        piece.setFill(Color.MAROON);
+                    }
+                });
+                pieces[i][j] = piece;
+                shownBoard[i][j] = EMPTY;
+                gameBoard.add(piece, j, i);
+            }
         }
     }
 
     /*
     Draws the pieces onto the board based on the current state of the in-scope board
+    Only the squares that differ from what is already shown are updated
      */
     private void drawPieces() {
-        int whiteCounter = 0;
-        int blackCounter = 0;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (currentBoard.getBoard()[i][j] == WHITE) {
-                    final Circle piece = new Circle(SQUARES / 2 - 4, WHITE_COLOUR);
-                    whitePieces[whiteCounter] = piece;
-                    whitePieces[whiteCounter].setStroke(Color.BLACK);
-                    whitePieces[whiteCounter].getStyleClass().add("whitePiece");
-                    gameBoard.add(piece, j, i);
-                    piece.setOnMouseClicked(event -> {
-                        if (currentBoard.getCurrentPlayer() == WHITE) {
-                            resetPieceColours();
-                            this.selectedPiece = piece;
-                            piece.setFill(Color.MAROON);
-                        }
-                    });
-                    whiteCounter++;
-                }
-                else if (currentBoard.getBoard()[i][j] == WHITE_KING) {
-                    final Circle piece = new Circle(SQUARES / 2 - 4, WHITE_COLOUR);
-                    whitePieces[whiteCounter] = piece;
-                    whitePieces[whiteCounter].setStroke(Color.SADDLEBROWN);
-                    whitePieces[whiteCounter].setStrokeWidth(5);
-                    whitePieces[whiteCounter].getStyleClass().add("whitePiece");
-                    gameBoard.add(piece, j, i);
-                    piece.setOnMouseClicked(event -> {
-                        if (currentBoard.getCurrentPlayer() == WHITE) {
-                            resetPieceColours();
-                            this.selectedPiece = piece;
-                            piece.setFill(Color.MAROON);
-                        }
-                    });
-                    whiteCounter++;
-                }
-                else if (currentBoard.getBoard()[i][j] == BLACK) {
-                    final Circle piece = new Circle(SQUARES / 2 - 4, BLACK_COLOUR);
-                    blackPieces[blackCounter] = piece;
-                    blackPieces[blackCounter].setStroke(Color.BLACK);
-                    blackPieces[blackCounter].getStyleClass().add("blackPiece");
-                    gameBoard.add(blackPieces[blackCounter], j, i);
-                    blackPieces[blackCounter].setOnMouseClicked(event -> {
-                        if (currentBoard.getCurrentPlayer() == BLACK) {
-                            resetPieceColours();
-                            this.selectedPiece = piece;
-                            piece.setFill(Color.MAROON);
-                        }
-                    });
-                    blackCounter++;
-                }
-                else if (currentBoard.getBoard()[i][j] == BLACK_KING) {
-                    final Circle piece = new Circle(SQUARES / 2 - 4, BLACK_COLOUR);
-                    blackPieces[blackCounter] = piece;
-                    blackPieces[blackCounter].setStroke(Color.SADDLEBROWN);
-                    blackPieces[blackCounter].setStrokeWidth(5);
-                    blackPieces[blackCounter].getStyleClass().add("blackPiece");
-                    gameBoard.add(blackPieces[blackCounter], j, i);
-                    blackPieces[blackCounter].setOnMouseClicked(event -> {
-                        if (currentBoard.getCurrentPlayer() == BLACK) {
-                            resetPieceColours();
-                            this.selectedPiece = piece;
-                            piece.setFill(Color.MAROON);
-                        }
-                    });
-                    blackCounter++;
+        int[][] board = currentBoard.getBoard();
+        for (int i = 0; i < BOARD_DIM; i++) {
+            for (int j = 0; j < BOARD_DIM; j++) {
+                if (board[i][j] != shownBoard[i][j]) {
+                    drawPiece(pieces[i][j], board[i][j]);
+                    shownBoard[i][j] = board[i][j];
                 }
             }
         }
+        if (selectedPiece != null && !selectedPiece.isVisible()) {
+            selectedPiece = null;
+        }
+    }
+
+    //Shows a square's circle as the given piece, or hides it if the square is empty
+    private void drawPiece(Circle circle, int piece) {
+        circle.getStyleClass().removeAll("whitePiece", "blackPiece");
+        if (piece == EMPTY) {
+            circle.setVisible(false);
+            return;
+        }
+        boolean white = piece == WHITE || piece == WHITE_KING;
+        boolean king = piece == WHITE_KING || piece == BLACK_KING;
+        circle.setFill(white ? WHITE_COLOUR : BLACK_COLOUR);
+        circle.setStroke(king ? Color.SADDLEBROWN : Color.BLACK);
+        circle.setStrokeWidth(king ? 5 : 1);
+        circle.getStyleClass().add(white ? "whitePiece" : "blackPiece");
+        circle.setVisible(true);
     }
 
     /*
-    Initialises all of the UI elements that serves as inputs/information
+    Initialises all of the UI elements that serves as inputs/information, called once from start
     Also sets all of the style sheet classes for UI elements
      */
     private void buildElements() {
 
-        layout.getChildren().removeAll();
         VBox gameInfo = new VBox();
         HBox playerInfo = new HBox();
         HBox turnInfo = new HBox();
@@ -319,48 +385,52 @@ public class SplashPage extends Application {
         Button restartGame = new Button();
 
         Text playerText = new Text("Current player: ");
-        Text currentPlayerText = new Text(currentBoard.getCurrentPlayer() == WHITE ? "White" : "Black");
-        Text currentTurn = new Text("Current turn: " + currentBoard.getTotalTurns());
-        Text stateTitle = new Text("Last 25 Turns");
+        Text stateTitle = new Text("Move History");
         stateTitle.getStyleClass().add("stateTitle");
         stateList.getChildren().add(stateTitle);
         stateList.getChildren().add(new Text(""));
-        ArrayList<Move> moveSequence = currentBoard.getMoveSequence();
 
-        int x = 0;
-        for (int i = moveSequence.size()-1; i >= 0; i--) {
-            Move m = moveSequence.get(i);
-            Text turn = new Text(m.toString());
-            turn.getStyleClass().add(m.getPlayer() == WHITE ? "stateListWhite" : "stateListBlack");
-            stateList.getChildren().add(turn);
-            x++;
-            if (x==25) {
-                break;
+        //The list only creates cells for the rows on screen, however long the game gets
+        historyList.getStyleClass().add("moveHistory");
+        historyList.setFocusTraversable(false);
+        historyList.setCellFactory(list -> new ListCell<Move>() {
+            @Override
+            protected void updateItem(Move move, boolean empty) {
+                super.updateItem(move, empty);
+                getStyleClass().removeAll("stateListWhite", "stateListBlack");
+                if (empty || move == null) {
+                    setText(null);
+                } else {
+                    setText((getIndex() + 1) + ". " + move.toString());
+                    getStyleClass().add(move.getPlayer() == WHITE ? "stateListWhite" : "stateListBlack");
+                }
             }
-        }
+        });
+        VBox.setVgrow(historyList, Priority.ALWAYS);
+        stateList.getChildren().add(historyList);
 
         restartGame.setOnMouseClicked(event -> restartGame());
 
         undo.setOnMouseClicked(event -> {
-            if (!gameStates.isEmpty()) {
+            if (history.canUndo()) {
                 backOneTurn();
             } else {
-                System.out.println("Make a turn if you wish to undo!");
+                Log.log(Log.INFO, "Make a turn if you wish to undo!");
             }
         });
 
         redo.setOnMouseClicked(event -> {
-            if (!gameStatesRedo.isEmpty()) {
+            if (history.canRedo()) {
                 forwardOneTurn();
             } else {
-                System.out.println("No forward moves!");
+                Log.log(Log.INFO, "No forward moves!");
             }
         });
 
         startPlayerVsPlayer.setOnMouseClicked(event -> startPvP());
 
         startPlayerVsAI.setOnMouseClicked(event -> {
-            System.out.println("Starting AI game");
+            Log.log(Log.INFO, "Starting AI game");
             startPvAI();
         });
         buttons.setPrefWidth(130);
@@ -379,6 +449,7 @@ public class SplashPage extends Application {
         gameBoard.setMinWidth(450);
         gameBoard.setMinHeight(450);
         stateList.setMinWidth(300);
+        stateList.setMaxWidth(300);
 
         undo.getStyleClass().add("button");
         gameInfo.getStyleClass().add("top");
@@ -387,8 +458,6 @@ public class SplashPage extends Application {
         playerText.getStyleClass().add("turnText");
         currentTurn.getStyleClass().add("infoText");
         stateList.getStyleClass().add("stateList");
-        currentPlayerText.getStyleClass().add(currentBoard.getCurrentPlayer() == WHITE ? "textWhite" : "textBlack");
-        gameBoard.setStyle("-fx-border-color: " + (currentBoard.getCurrentPlayer() == WHITE ? "white" : "black"));
 
         playerInfo.getChildren().addAll(playerText, currentPlayerText);
         buttons.getChildren().addAll(startPlayerVsPlayer, startPlayerVsAI, restartGame, undo, redo);
@@ -400,4 +469,32 @@ public class SplashPage extends Application {
         layout.setTop(gameInfo);
         layout.setRight(stateList);
     }
+
+    /*
+    Updates the information texts and the move history to the board state
+    The history list is changed at the end only, so a move, undo or redo touches a single row
+     */
+    private void updateElements() {
+        boolean white = currentBoard.getCurrentPlayer() == WHITE;
+        currentPlayerText.setText(white ? "White" : "Black");
+        currentPlayerText.getStyleClass().removeAll("textWhite", "textBlack");
+        currentPlayerText.getStyleClass().add(white ? "textWhite" : "textBlack");
+        currentTurn.setText("Current turn: " + currentBoard.getTotalTurns());
+        gameBoard.setStyle("-fx-border-color: " + (white ? "white" : "black"));
+
+        ArrayList<Move> moveSequence = currentBoard.getMoveSequence();
+        int common = Math.min(historyItems.size(), moveSequence.size());
+        if (common > 0 && historyItems.get(common - 1) != moveSequence.get(common - 1)) {
+            common = 0; //A different game, or the board was rebuilt from a history checkpoint
+        }
+        if (common < historyItems.size()) {
+            historyItems.remove(common, historyItems.size());
+        }
+        if (common < moveSequence.size()) {
+            historyItems.addAll(moveSequence.subList(common, moveSequence.size()));
+        }
+        if (!historyItems.isEmpty()) {
+            historyList.scrollTo(historyItems.size() - 1);
+        }
+    }
 }
\ No newline at end of file